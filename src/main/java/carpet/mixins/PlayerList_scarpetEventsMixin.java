@@ -1,6 +1,7 @@
 package carpet.mixins;
 
 import carpet.fakes.ServerPlayerInterface;
+import carpet.script.ParseCache;
 import carpet.script.external.Vanilla;
 import net.minecraft.network.chat.ChatType;
 import net.minecraft.network.chat.PlayerChatMessage;
@@ -53,6 +54,7 @@ public class PlayerList_scarpetEventsMixin
     @Inject(method = "reloadResources", at = @At("HEAD"))
     private void reloadCommands(CallbackInfo ci)
     {
+        ParseCache.invalidateAll();
         Vanilla.MinecraftServer_getScriptServer(server).reAddCommands();
     }
 }
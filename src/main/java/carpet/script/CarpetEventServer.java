@@ -23,8 +23,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -74,7 +73,9 @@ import org.jspecify.annotations.Nullable;
 
 public class CarpetEventServer
 {
-    public final List<ScheduledCall> scheduledCalls = new LinkedList<>();
+    public final ScheduledCallWheel scheduledCalls = new ScheduledCallWheel();
+    public final EventBudget budget = new EventBudget();
+    private final Set<BatchedCallback> pendingBatches = new LinkedHashSet<>();
     public final CarpetScriptServer scriptServer;
     private static final List<Value> NOARGS = Collections.emptyList();
     public final Map<String, Event> customEvents = new HashMap<>();
@@ -139,6 +140,22 @@ public class CarpetEventServer
         }
 
 
+        /**
+         * @return whether the handler function may read the event argument
+         */
+        public boolean usesArgument(int index)
+        {
+            return function.usesArgument(index);
+        }
+
+        /**
+         * @return copy of the callback for an app instance of another player
+         */
+        public Callback forTarget(@Nullable String target)
+        {
+            return new Callback(host, target, function, parametrizedArgs, scriptServer);
+        }
+
         @Override
         public String toString()
         {
@@ -165,14 +182,19 @@ public class CarpetEventServer
     {
 
         private final CarpetContext ctx;
+        /**
+         * Scheduler tick the call is due in, set by {@link ScheduledCallWheel}
+         */
         public long dueTime;
+        long id;
+        @Nullable
+        Set<ScheduledCall> bucket;
 
-        public ScheduledCall(CarpetContext context, FunctionValue function, List<Value> args, long dueTime)
+        public ScheduledCall(CarpetContext context, FunctionValue function, List<Value> args)
         {
             // ignoring target as we will be always calling self
             super(context.host.getName(), null, function, args, (CarpetScriptServer) context.scriptServer());
             this.ctx = context.duplicate();
-            this.dueTime = dueTime;
         }
 
         /**
@@ -184,6 +206,92 @@ public class CarpetEventServer
         }
     }
 
+    /**
+     * Callback that collects arguments of all events in a tick, and calls the handler once at the end of the tick
+     * with a list of argument lists of all these events
+     */
+    public static class BatchedCallback extends Callback
+    {
+        /**
+         * List the callback is registered in, so it can be removed when a flush fails
+         */
+        private final CallbackList list;
+        private List<Value> batch = new ArrayList<>();
+        @Nullable
+        private CommandSourceStack batchSource;
+
+        public BatchedCallback(CallbackList list, String host, @Nullable String target, FunctionValue function, List<Value> parametrizedArgs, CarpetScriptServer scriptServer)
+        {
+            super(host, target, function, parametrizedArgs, scriptServer);
+            this.list = list;
+        }
+
+        @Override
+        public CallbackResult execute(CommandSourceStack sender, List<Value> runtimeArgs)
+        {
+            if (scriptServer.stopAll)
+            {
+                return CallbackResult.FAIL;
+            }
+            boolean first;
+            synchronized (this)
+            {
+                first = batch.isEmpty();
+                if (first)
+                {
+                    batchSource = sender;
+                }
+                batch.add(ListValue.wrap(new ArrayList<>(runtimeArgs)));
+            }
+            if (first)
+            {
+                scriptServer.events.addPendingBatch(this);
+            }
+            return CallbackResult.SUCCESS;
+        }
+
+        /**
+         * Calls the handler with all events collected so far
+         *
+         * @return result of the call, or {@link CallbackResult#PASS} if there were no events
+         */
+        public CallbackResult flush()
+        {
+            List<Value> events;
+            CommandSourceStack source;
+            synchronized (this)
+            {
+                events = batch;
+                source = batchSource;
+                batch = new ArrayList<>();
+                batchSource = null;
+            }
+            if (events.isEmpty() || source == null)
+            {
+                return CallbackResult.PASS;
+            }
+            List<Value> args = new ArrayList<>(1 + parametrizedArgs.size());
+            args.add(ListValue.wrap(events));
+            args.addAll(parametrizedArgs);
+            return scriptServer.events.runEventCall(
+                    source.withPermission(Vanilla.MinecraftServer_getRunPermissionLevel(source.getServer())),
+                    host, optionalTarget, function, args);
+        }
+
+        @Override
+        public boolean usesArgument(int index)
+        {
+            // any event argument can be read from the batch
+            return function.usesArgument(0);
+        }
+
+        @Override
+        public Callback forTarget(@Nullable String target)
+        {
+            return new BatchedCallback(list, host, target, function, parametrizedArgs, scriptServer);
+        }
+    }
+
     public static class CallbackList
     {
 
@@ -237,6 +345,49 @@ public class CarpetEventServer
          * @return Whether this event call has been cancelled
          */
         public boolean call(Supplier<List<Value>> argumentSupplier, Supplier<CommandSourceStack> cmdSourceSupplier)
+        {
+            return call(argumentSupplier, cmdSourceSupplier, false);
+        }
+
+        /**
+         * Handles built-in events that can't be cancelled. Handlers of apps that went over their time budget
+         * for this event in the current tick are deferred to later ticks.
+         */
+        public void callDeferrable(Supplier<List<Value>> argumentSupplier, Supplier<CommandSourceStack> cmdSourceSupplier)
+        {
+            call(argumentSupplier, cmdSourceSupplier, true);
+        }
+
+        /**
+         * Creates event arguments one by one, only if any of the current handlers reads them. Arguments that are not
+         * read by any handler are passed as {@link Value#NULL}.
+         */
+        @SafeVarargs
+        public final Supplier<List<Value>> lazyArguments(Supplier<Value>... arguments)
+        {
+            return () -> {
+                List<Value> argv = new ArrayList<>(arguments.length);
+                for (int i = 0; i < arguments.length; i++)
+                {
+                    argv.add(isArgumentUsed(i) ? arguments[i].get() : Value.NULL);
+                }
+                return argv;
+            };
+        }
+
+        private boolean isArgumentUsed(int index)
+        {
+            for (int i = 0; i < callList.size(); i++)
+            {
+                if (callList.get(i).usesArgument(index))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean call(Supplier<List<Value>> argumentSupplier, Supplier<CommandSourceStack> cmdSourceSupplier, boolean deferrable)
         {
             if (callList.isEmpty())
             {
@@ -260,6 +411,7 @@ public class CarpetEventServer
                 Runnable profilerToken = Carpet.startProfilerSection("Scarpet events");
                 List<Value> argv = argumentSupplier.get(); // empty for onTickDone
                 String nameCheck = perPlayerDistribution ? source.getTextName() : null;
+                EventBudget budget = scriptServer.events.budget;
                 assert argv.size() == reqArgs;
                 boolean cancelled = false;
                 try
@@ -276,7 +428,14 @@ public class CarpetEventServer
                         {
                             continue;
                         }
+                        if (deferrable && budget.shouldDefer(this, call))
+                        {
+                            budget.defer(this, call, source, argv);
+                            continue;
+                        }
+                        long start = System.nanoTime();
                         CallbackResult result = call.execute(source, argv);
+                        budget.record(this, call, System.nanoTime() - start);
                         if (result == CallbackResult.CANCEL)
                         {
                             cancelled = true;
@@ -379,6 +538,28 @@ public class CarpetEventServer
             return true;
         }
 
+        /**
+         * Adds a handler called once per tick with arguments of all events of that tick
+         */
+        public boolean addBatchedCallInternal(ScriptHost host, FunctionValue function, List<Value> args)
+        {
+            if (function == null || (function.getArguments().size() - args.size()) != 1)
+            {
+                return false;
+            }
+            removeEventCall(host.getName(), host.user, function.getString());
+            callList.add(new BatchedCallback(this, host.getName(), host.user, function, args, (CarpetScriptServer) host.scriptServer()));
+            return true;
+        }
+
+        /**
+         * Removes the callback, like failing callbacks get removed when called
+         */
+        void removeCall(Callback callback)
+        {
+            removeCallsIf(c -> c == callback);
+        }
+
         public void removeEventCall(String hostName, String target, String funName)
         {
             removeCallsIf((c) -> c.function.getString().equals(funName)
@@ -401,7 +582,7 @@ public class CarpetEventServer
                 if ((Objects.equals(c.host, host.getName())) // TODO fix me
                         && c.optionalTarget == null)
                 {
-                    copyCalls.add(new Callback(c.host, host.user, c.function, c.parametrizedArgs, host.scriptServer()));
+                    copyCalls.add(c.forTarget(host.user));
                 }
             });
             callList.addAll(copyCalls);
@@ -465,7 +646,7 @@ public class CarpetEventServer
             @Override
             public void onTick(MinecraftServer server)
             {
-            handler.call(Collections::emptyList,server::createCommandSourceStack);
+            handler.callDeferrable(Collections::emptyList,server::createCommandSourceStack);
             }
         };
         public static final Event NETHER_TICK = new Event("tick_nether", 0, true)
@@ -479,7 +660,7 @@ public class CarpetEventServer
             @Override
             public void onTick(MinecraftServer server)
             {
-                handler.call(Collections::emptyList, () ->
+                handler.callDeferrable(Collections::emptyList, () ->
                         server.createCommandSourceStack().
                                 withLevel(server.getLevel(Level.NETHER))
                 );
@@ -496,7 +677,7 @@ public class CarpetEventServer
             @Override
             public void onTick(MinecraftServer server)
             {
-                handler.call(Collections::emptyList, () ->
+                handler.callDeferrable(Collections::emptyList, () ->
                         server.createCommandSourceStack().
                                 withLevel(server.getLevel(Level.END))
                 );
@@ -508,7 +689,7 @@ public class CarpetEventServer
             @Override
             public void onChunkEvent(ServerLevel world, ChunkPos chPos, boolean generated)
             {
-                handler.call(
+                handler.callDeferrable(
                         () -> Arrays.asList(new NumericValue(chPos.x << 4), new NumericValue(chPos.z << 4)),
                         () -> world.getServer().createCommandSourceStack().withLevel(world)
                 );
@@ -520,7 +701,7 @@ public class CarpetEventServer
             @Override
             public void onChunkEvent(ServerLevel world, ChunkPos chPos, boolean generated)
             {
-                handler.call(
+                handler.callDeferrable(
                         () -> Arrays.asList(new NumericValue(chPos.x << 4), new NumericValue(chPos.z << 4)),
                         () -> world.getServer().createCommandSourceStack().withLevel(world)
                 );
@@ -532,7 +713,7 @@ public class CarpetEventServer
             @Override
             public void onChunkEvent(ServerLevel world, ChunkPos chPos, boolean generated)
             {
-                handler.call(
+                handler.callDeferrable(
                         () -> Arrays.asList(new NumericValue(chPos.x << 4), new NumericValue(chPos.z << 4)),
                         () -> world.getServer().createCommandSourceStack().withLevel(world)
                 );
@@ -544,7 +725,7 @@ public class CarpetEventServer
             @Override
             public boolean onPlayerEvent(ServerPlayer player)
             {
-                handler.call(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
+                handler.callDeferrable(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
                 return false;
             }
         };
@@ -553,7 +734,7 @@ public class CarpetEventServer
             @Override
             public boolean onPlayerEvent(ServerPlayer player)
             {
-                handler.call(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
+                handler.callDeferrable(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
                 return false;
             }
         };
@@ -562,7 +743,7 @@ public class CarpetEventServer
             @Override
             public boolean onPlayerEvent(ServerPlayer player)
             {
-                handler.call(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
+                handler.callDeferrable(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
                 return false;
             }
         };
@@ -571,7 +752,7 @@ public class CarpetEventServer
             @Override
             public boolean onPlayerEvent(ServerPlayer player)
             {
-                handler.call(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
+                handler.callDeferrable(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
                 return false;
             }
         };
@@ -580,7 +761,7 @@ public class CarpetEventServer
             @Override
             public void onMountControls(ServerPlayer player, float strafeSpeed, float forwardSpeed, boolean jumping, boolean sneaking)
             {
-                handler.call(() -> Arrays.asList(new EntityValue(player),
+                handler.callDeferrable(() -> Arrays.asList(new EntityValue(player),
                         new NumericValue(forwardSpeed), new NumericValue(strafeSpeed), BooleanValue.of(jumping), BooleanValue.of(sneaking)
                 ), player::createCommandSourceStack);
             }
@@ -590,12 +771,11 @@ public class CarpetEventServer
             @Override
             public boolean onItemAction(ServerPlayer player, InteractionHand enumhand, ItemStack itemstack)
             {
-                return handler.call(() ->
-                        Arrays.asList(
-                                new EntityValue(player),
-                                ValueConversions.of(itemstack, player.level().registryAccess()),
-                                StringValue.of(enumhand == InteractionHand.MAIN_HAND ? "mainhand" : "offhand")
-                        ), player::createCommandSourceStack);
+                return handler.call(handler.lazyArguments(
+                        () -> new EntityValue(player),
+                        () -> ValueConversions.of(itemstack, player.level().registryAccess()),
+                        () -> StringValue.of(enumhand == InteractionHand.MAIN_HAND ? "mainhand" : "offhand")
+                ), player::createCommandSourceStack);
             }
         };
         public static final Event PLAYER_CLICKS_BLOCK = new Event("player_clicks_block", 3, false)
@@ -642,7 +822,7 @@ public class CarpetEventServer
             @Override
             public boolean onBlockHit(ServerPlayer player, InteractionHand enumhand, BlockHitResult hitRes)
             {
-                handler.call(() ->
+                handler.callDeferrable(() ->
                 {
                     BlockPos blockpos = hitRes.getBlockPos();
                     Direction enumfacing = hitRes.getDirection();
@@ -667,11 +847,11 @@ public class CarpetEventServer
             @Override
             public boolean onBlockPlaced(ServerPlayer player, BlockPos pos, InteractionHand enumhand, ItemStack itemstack)
             {
-                return handler.call(() -> Arrays.asList(
-                        new EntityValue(player),
-                        ValueConversions.of(itemstack, player.level().registryAccess()),
-                        StringValue.of(enumhand == InteractionHand.MAIN_HAND ? "mainhand" : "offhand"),
-                        new BlockValue(null, player.level(), pos)
+                return handler.call(handler.lazyArguments(
+                        () -> new EntityValue(player),
+                        () -> ValueConversions.of(itemstack, player.level().registryAccess()),
+                        () -> StringValue.of(enumhand == InteractionHand.MAIN_HAND ? "mainhand" : "offhand"),
+                        () -> new BlockValue(null, player.level(), pos)
                 ), player::createCommandSourceStack);
             }
         };
@@ -680,11 +860,11 @@ public class CarpetEventServer
             @Override
             public boolean onBlockPlaced(ServerPlayer player, BlockPos pos, InteractionHand enumhand, ItemStack itemstack)
             {
-                handler.call(() -> Arrays.asList(
-                        new EntityValue(player),
-                        ValueConversions.of(itemstack, player.level().registryAccess()),
-                        StringValue.of(enumhand == InteractionHand.MAIN_HAND ? "mainhand" : "offhand"),
-                        new BlockValue(null, player.level(), pos)
+                handler.callDeferrable(handler.lazyArguments(
+                        () -> new EntityValue(player),
+                        () -> ValueConversions.of(itemstack, player.level().registryAccess()),
+                        () -> StringValue.of(enumhand == InteractionHand.MAIN_HAND ? "mainhand" : "offhand"),
+                        () -> new BlockValue(null, player.level(), pos)
                 ), player::createCommandSourceStack);
                 return false;
             }
@@ -716,12 +896,12 @@ public class CarpetEventServer
             public void onTrade(ServerPlayer player, Merchant merchant, MerchantOffer tradeOffer)
             {
                 RegistryAccess regs = player.level().registryAccess();
-                handler.call(() -> Arrays.asList(
-                        new EntityValue(player),
-                        merchant instanceof final AbstractVillager villager ? new EntityValue(villager) : Value.NULL,
-                        ValueConversions.of(tradeOffer.getBaseCostA(), regs),
-                        ValueConversions.of(tradeOffer.getCostB(), regs),
-                        ValueConversions.of(tradeOffer.getResult(), regs)
+                handler.callDeferrable(handler.lazyArguments(
+                        () -> new EntityValue(player),
+                        () -> merchant instanceof final AbstractVillager villager ? new EntityValue(villager) : Value.NULL,
+                        () -> ValueConversions.of(tradeOffer.getBaseCostA(), regs),
+                        () -> ValueConversions.of(tradeOffer.getCostB(), regs),
+                        () -> ValueConversions.of(tradeOffer.getResult(), regs)
                 ), player::createCommandSourceStack);
             }
         };
@@ -730,7 +910,10 @@ public class CarpetEventServer
             @Override
             public boolean onItemAction(ServerPlayer player, InteractionHand enumhand, ItemStack itemstack)
             {
-                handler.call(() -> Arrays.asList(new EntityValue(player), ValueConversions.of(itemstack, player.level().registryAccess())), player::createCommandSourceStack);
+                handler.callDeferrable(handler.lazyArguments(
+                        () -> new EntityValue(player),
+                        () -> ValueConversions.of(itemstack, player.level().registryAccess())
+                ), player::createCommandSourceStack);
                 return false;
             }
         };
@@ -748,7 +931,7 @@ public class CarpetEventServer
             @Override
             public boolean onPlayerEvent(ServerPlayer player)
             {
-                handler.call(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
+                handler.callDeferrable(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
                 return false;
             }
         };
@@ -757,7 +940,7 @@ public class CarpetEventServer
             @Override
             public boolean onPlayerEvent(ServerPlayer player)
             {
-                handler.call(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
+                handler.callDeferrable(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
                 return false;
             }
         };
@@ -766,7 +949,7 @@ public class CarpetEventServer
             @Override
             public boolean onPlayerEvent(ServerPlayer player)
             {
-                handler.call(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
+                handler.callDeferrable(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
                 return false;
             }
         };
@@ -775,7 +958,7 @@ public class CarpetEventServer
             @Override
             public boolean onPlayerEvent(ServerPlayer player)
             {
-                handler.call(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
+                handler.callDeferrable(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
                 return false;
             }
         };
@@ -786,12 +969,11 @@ public class CarpetEventServer
             public boolean onItemAction(ServerPlayer player, InteractionHand enumhand, ItemStack itemstack)
             {
                 // this.getStackInHand(this.getActiveHand()), this.activeItemStack)
-                handler.call(() ->
-                        Arrays.asList(
-                                new EntityValue(player),
-                                ValueConversions.of(itemstack, player.level().registryAccess()),
-                                StringValue.of(enumhand == InteractionHand.MAIN_HAND ? "mainhand" : "offhand")
-                        ), player::createCommandSourceStack);
+                handler.callDeferrable(handler.lazyArguments(
+                        () -> new EntityValue(player),
+                        () -> ValueConversions.of(itemstack, player.level().registryAccess()),
+                        () -> StringValue.of(enumhand == InteractionHand.MAIN_HAND ? "mainhand" : "offhand")
+                ), player::createCommandSourceStack);
                 return false;
             }
         };
@@ -801,12 +983,11 @@ public class CarpetEventServer
             public boolean onItemAction(ServerPlayer player, InteractionHand enumhand, ItemStack itemstack)
             {
                 // this.getStackInHand(this.getActiveHand()), this.activeItemStack)
-                return handler.call(() ->
-                        Arrays.asList(
-                                new EntityValue(player),
-                                ValueConversions.of(itemstack, player.level().registryAccess()),
-                                new StringValue(enumhand == InteractionHand.MAIN_HAND ? "mainhand" : "offhand")
-                        ), player::createCommandSourceStack);
+                return handler.call(handler.lazyArguments(
+                        () -> new EntityValue(player),
+                        () -> ValueConversions.of(itemstack, player.level().registryAccess()),
+                        () -> new StringValue(enumhand == InteractionHand.MAIN_HAND ? "mainhand" : "offhand")
+                ), player::createCommandSourceStack);
             }
         };
         public static final Event PLAYER_DROPS_ITEM = new Event("player_drops_item", 1, false)
@@ -847,7 +1028,7 @@ public class CarpetEventServer
                 {
                     return; // initial slot update
                 }
-                handler.call(() ->
+                handler.callDeferrable(() ->
                         Arrays.asList(
                                 new EntityValue(player),
                                 new NumericValue(from),
@@ -868,11 +1049,10 @@ public class CarpetEventServer
             @Override
             public void onHandAction(ServerPlayer player, InteractionHand hand)
             {
-                handler.call(() -> Arrays.asList(
-                                new EntityValue(player),
-                                StringValue.of(hand == InteractionHand.MAIN_HAND ? "mainhand" : "offhand")
-                        )
-                        , player::createCommandSourceStack);
+                handler.callDeferrable(handler.lazyArguments(
+                        () -> new EntityValue(player),
+                        () -> StringValue.of(hand == InteractionHand.MAIN_HAND ? "mainhand" : "offhand")
+                ), player::createCommandSourceStack);
             }
         };
         public static final Event PLAYER_TAKES_DAMAGE = new Event("player_takes_damage", 4, false)
@@ -905,7 +1085,7 @@ public class CarpetEventServer
             @Override
             public boolean onEntityHandAction(ServerPlayer player, Entity entity, InteractionHand enumhand)
             {
-                handler.call(() -> Arrays.asList(new EntityValue(player), new EntityValue(entity)), player::createCommandSourceStack);
+                handler.callDeferrable(handler.lazyArguments(() -> new EntityValue(player), () -> new EntityValue(entity)), player::createCommandSourceStack);
                 return false;
             }
         };
@@ -915,7 +1095,7 @@ public class CarpetEventServer
             @Override
             public boolean onPlayerEvent(ServerPlayer player)
             {
-                handler.call(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
+                handler.callDeferrable(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
                 return false;
             }
         };
@@ -924,7 +1104,7 @@ public class CarpetEventServer
             @Override
             public boolean onPlayerEvent(ServerPlayer player)
             {
-                handler.call(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
+                handler.callDeferrable(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
                 return false;
             }
         };
@@ -939,7 +1119,7 @@ public class CarpetEventServer
                 Value fromDimStr = NBTSerializableValue.nameFromRegistryId(fromDim.identifier());
                 Value toDimStr = NBTSerializableValue.nameFromRegistryId(dimTo.identifier());
 
-                handler.call(() -> Arrays.asList(new EntityValue(player), fromValue, fromDimStr, toValue, toDimStr), player::createCommandSourceStack);
+                handler.callDeferrable(() -> Arrays.asList(new EntityValue(player), fromValue, fromDimStr, toValue, toDimStr), player::createCommandSourceStack);
             }
         };
         public static final Event PLAYER_CONNECTS = new Event("player_connects", 1, false)
@@ -947,7 +1127,7 @@ public class CarpetEventServer
             @Override
             public boolean onPlayerEvent(ServerPlayer player)
             {
-                handler.call(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
+                handler.callDeferrable(() -> Collections.singletonList(new EntityValue(player)), player::createCommandSourceStack);
                 return false;
             }
         };
@@ -956,7 +1136,7 @@ public class CarpetEventServer
             @Override
             public boolean onPlayerMessage(ServerPlayer player, String message)
             {
-                handler.call(() -> Arrays.asList(new EntityValue(player), new StringValue(message)), player::createCommandSourceStack);
+                handler.callDeferrable(() -> Arrays.asList(new EntityValue(player), new StringValue(message)), player::createCommandSourceStack);
                 return false;
             }
         };
@@ -1002,7 +1182,7 @@ public class CarpetEventServer
                     return;
                 }
                 Registry<StatType<?>> registry = player.level().registryAccess().lookupOrThrow(Registries.STAT_TYPE);
-                handler.call(() -> Arrays.asList(
+                handler.callDeferrable(() -> Arrays.asList(
                         new EntityValue(player),
                         NBTSerializableValue.nameFromRegistryId(registry.getKey(stat.getType())),
                         NBTSerializableValue.nameFromRegistryId(id),
@@ -1015,7 +1195,7 @@ public class CarpetEventServer
             @Override
             public void onWorldEventFlag(ServerLevel world, BlockPos pos, int flag)
             {
-                handler.call(
+                handler.callDeferrable(
                         () -> Arrays.asList(
                                 new BlockValue(null, world, pos),
                                 flag > 0 ? Value.TRUE : Value.FALSE
@@ -1055,7 +1235,7 @@ public class CarpetEventServer
             @Override
             public boolean onExplosion(ServerLevel world, Entity e, Supplier<LivingEntity> attacker, Vec3 center, float power, boolean createFire, List<BlockPos> affectedBlocks, List<Entity> affectedEntities, Explosion.BlockInteraction type)
             {
-                handler.call(
+                handler.callDeferrable(
                         () -> Arrays.asList(
                                 ValueConversions.of(center),
                                 NumericValue.of(power),
@@ -1106,7 +1286,7 @@ public class CarpetEventServer
                     @Override
                     public void onEntityAction(Entity entity, boolean created)
                     {
-                        handler.call(
+                        handler.callDeferrable(
                                 () -> Collections.singletonList(new EntityValue(entity)),
                                 () -> entity.level().getServer().createCommandSourceStack().withLevel((ServerLevel) entity.level()).withPermission(Vanilla.MinecraftServer_getRunPermissionLevel(entity.level().getServer()))
                         );
@@ -1125,7 +1305,7 @@ public class CarpetEventServer
                     @Override
                     public void onEntityAction(Entity entity, boolean created)
                     {
-                        handler.call(
+                        handler.callDeferrable(
                                 () -> Arrays.asList(new EntityValue(entity), BooleanValue.of(created)),
                                 () -> entity.level().getServer().createCommandSourceStack().withLevel((ServerLevel) entity.level()).withPermission(Vanilla.MinecraftServer_getRunPermissionLevel(entity.level().getServer()))
                         );
@@ -1332,7 +1512,7 @@ public class CarpetEventServer
             {
                 throw new InternalExpressionException("Expected " + handler.reqArgs + " arguments for " + name + ", got " + (args.length + 1));
             }
-            handler.call(
+            handler.callDeferrable(
                     () -> {
                         List<Value> valArgs = new ArrayList<>();
                         valArgs.add(EntityValue.of(player));
@@ -1351,7 +1531,7 @@ public class CarpetEventServer
             {
                 throw new InternalExpressionException("Expected " + handler.reqArgs + " arguments for " + name + ", got " + args.length);
             }
-            handler.call(
+            handler.callDeferrable(
                     () -> {
                         List<Value> valArgs = new ArrayList<>();
                         for (Object o : args)
@@ -1377,28 +1557,34 @@ public class CarpetEventServer
         {
             return;
         }
-        Iterator<ScheduledCall> eventIterator = scheduledCalls.iterator();
-        List<ScheduledCall> currentCalls = new ArrayList<>();
-        while (eventIterator.hasNext())
-        {
-            ScheduledCall call = eventIterator.next();
-            call.dueTime--;
-            if (call.dueTime <= 0)
-            {
-                currentCalls.add(call);
-                eventIterator.remove();
-            }
-        }
-        for (ScheduledCall call : currentCalls)
+        for (ScheduledCall call : scheduledCalls.advance())
         {
             call.execute();
         }
 
     }
 
-    public void scheduleCall(CarpetContext context, FunctionValue function, List<Value> args, long due)
+    /**
+     * @return handle of the scheduled call
+     */
+    public long scheduleCall(CarpetContext context, FunctionValue function, List<Value> args, long due)
     {
-        scheduledCalls.add(new ScheduledCall(context, function, args, due));
+        return scheduledCalls.schedule(new ScheduledCall(context, function, args), due);
+    }
+
+    /**
+     * Cancels a call scheduled by the host
+     *
+     * @return whether a pending call with this handle was cancelled
+     */
+    public boolean cancelScheduledCall(CarpetScriptHost host, long handle)
+    {
+        ScheduledCall call = scheduledCalls.get(handle);
+        if (call == null || !Objects.equals(call.host, host.getName()))
+        {
+            return false;
+        }
+        return scheduledCalls.cancel(handle) != null;
     }
 
     public void runScheduledCall(BlockPos origin, CommandSourceStack source, String hostname, CarpetScriptHost host, FunctionValue udf, List<Value> argv)
@@ -1490,6 +1676,46 @@ public class CarpetEventServer
         return ev.handler.addEventCallInternal(host, function, args == null ? NOARGS : args);
     }
 
+    public boolean handleBatchedEvent(String event, CarpetScriptHost host, FunctionValue function, List<Value> args)
+    {
+        Event ev = Event.getOrCreateCustom(event, scriptServer);
+        onEventAddedToHost(ev, host);
+        return ev.handler.addBatchedCallInternal(host, function, args == null ? NOARGS : args);
+    }
+
+    private void addPendingBatch(BatchedCallback callback)
+    {
+        synchronized (pendingBatches)
+        {
+            pendingBatches.add(callback);
+        }
+    }
+
+    /**
+     * Calls batched event handlers with events collected during the tick
+     */
+    public void flushBatches()
+    {
+        List<BatchedCallback> batches;
+        synchronized (pendingBatches)
+        {
+            if (pendingBatches.isEmpty())
+            {
+                return;
+            }
+            batches = new ArrayList<>(pendingBatches);
+            pendingBatches.clear();
+        }
+        for (BatchedCallback callback : batches)
+        {
+            if (callback.flush() == CallbackResult.FAIL)
+            {
+                // same as regular callbacks failing in CallbackList.call
+                callback.list.removeCall(callback);
+            }
+        }
+    }
+
     public int signalEvent(String event, CarpetContext cc, @Nullable ServerPlayer target, List<Value> callArgs)
     {
         Event ev = Event.getEvent(event, ((CarpetScriptHost) cc.host).scriptServer());
@@ -1552,6 +1778,8 @@ public class CarpetEventServer
             }
         }
         // remove scheduled calls
-        scheduledCalls.removeIf(sc -> sc.host != null && sc.host.equals(host.getName()));
+        scheduledCalls.removeHost(host.getName());
+        // remove deferred event calls
+        budget.removeHost(host.getName());
     }
 }
\ No newline at end of file
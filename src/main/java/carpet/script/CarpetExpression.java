@@ -47,22 +47,41 @@ public class CarpetExpression
         return origin;
     }
 
+    @Nullable
+    private static Expression.FunctionTables apiTables;
+    private static int annotatedFunctions = -1;
+
+    /**
+     * @return tables of all built-in functions, rebuilt when new annotated functions got registered since last time
+     */
+    private static synchronized Expression.FunctionTables apiTables()
+    {
+        int count = AnnotationParser.functionCount();
+        if (apiTables == null || count != annotatedFunctions)
+        {
+            apiTables = Expression.buildTables(Expression.languageTables(), e -> {
+                WorldAccess.apply(e);
+                Entities.apply(e);
+                Inventories.apply(e);
+                BlockIterators.apply(e);
+                Auxiliary.apply(e);
+                Threading.apply(e);
+                Scoreboards.apply(e);
+                Monitoring.apply(e);
+                AnnotationParser.apply(e);
+            });
+            annotatedFunctions = count;
+        }
+        return apiTables;
+    }
+
     public CarpetExpression(@Nullable Module module, String expression, CommandSourceStack source, BlockPos origin)
     {
         this.origin = origin;
         this.source = source;
-        this.expr = new Expression(expression);
+        this.expr = new Expression(expression, apiTables());
         this.expr.asAModule(module);
-
-        WorldAccess.apply(this.expr);
-        Entities.apply(this.expr);
-        Inventories.apply(this.expr);
-        BlockIterators.apply(this.expr);
-        Auxiliary.apply(this.expr);
-        Threading.apply(this.expr);
-        Scoreboards.apply(this.expr);
-        Monitoring.apply(this.expr);
-        AnnotationParser.apply(this.expr);
+        // extensions get the expression, so they can add functions using its source and origin
         Carpet.handleExtensionsAPI(this);
     }
 
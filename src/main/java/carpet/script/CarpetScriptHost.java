@@ -11,6 +11,8 @@ import carpet.script.exception.IntegrityException;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.InvalidCallbackException;
 import carpet.script.exception.LoadException;
+import carpet.script.exception.ThrowStatement;
+import carpet.script.exception.Throwables;
 import carpet.script.external.Carpet;
 import carpet.script.external.Vanilla;
 import carpet.script.utils.AppStoreManager;
@@ -42,6 +44,7 @@ import net.minecraft.world.entity.EntityType;
 import org.apache.commons.lang3.tuple.Pair;
 
 import org.jspecify.annotations.Nullable;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -64,12 +67,23 @@ import static net.minecraft.commands.Commands.literal;
 
 public class CarpetScriptHost extends ScriptHost
 {
+    /**
+     * Time changes to the key-value store of an app can wait in memory before they get written
+     */
+    public static final long KEY_VALUE_COMMIT_MILLIS = 1000L;
+
     public CommandSourceStack responsibleSource;
 
     private Tag globalState;
     private int saveTimeout;
+    @Nullable
+    private KeyValueStore keyValueStore;
     public boolean persistenceRequired;
     public double eventPriority;
+    /**
+     * Size in bytes after which text files the app appends to get rotated, or 0 if they can grow without limits
+     */
+    public long logSizeLimit;
 
     public Map<Value, Value> appConfig;
     public Map<String, CommandArgument> appArgTypes;
@@ -92,6 +106,8 @@ public class CarpetScriptHost extends ScriptHost
         {
             persistenceRequired = ((CarpetScriptHost) parent).persistenceRequired;
             strict = parent.strict;
+            compileFunctions = parent.compileFunctions;
+            logSizeLimit = ((CarpetScriptHost) parent).logSizeLimit;
         }
         appConfig = config;
         appArgTypes = argTypes;
@@ -111,6 +127,7 @@ public class CarpetScriptHost extends ScriptHost
                 host.setChatErrorSnooper(source);
                 CarpetExpression ex = new CarpetExpression(host.main, module.code(), source, new BlockPos(0, 0, 0));
                 ex.getExpr().asATextSource();
+                ex.getExpr().cacheTokensIn(scriptServer.moduleCache);
                 host.storeSource = storeSource;
                 host.root = ex.scriptRunCommand(host, BlockPos.containing(source.getPosition())).getRight();
             }
@@ -334,7 +351,10 @@ public class CarpetScriptHost extends ScriptHost
             setPerPlayer(config.getOrDefault(new StringValue("scope"), new StringValue("player")).getString().equalsIgnoreCase("player"));
             persistenceRequired = config.getOrDefault(new StringValue("stay_loaded"), Value.TRUE).getBoolean();
             strict = config.getOrDefault(StringValue.of("strict"), Value.FALSE).getBoolean();
+            compileFunctions = config.getOrDefault(StringValue.of("compile"), Value.FALSE).getBoolean()
+                    && Vanilla.ScriptServer_scriptOptimizations(scriptServer().server);
             eventPriority = config.getOrDefault(new StringValue("event_priority"), Value.ZERO).readDoubleNumber();
+            logSizeLimit = Math.max(0L, config.getOrDefault(StringValue.of("log_size_limit"), Value.ZERO).readInteger()) * 1024L;
             // check requires
             Value loadRequirements = config.get(new StringValue("requires"));
             if (loadRequirements instanceof final FunctionValue functionValue)
@@ -647,6 +667,7 @@ public class CarpetScriptHost extends ScriptHost
         CarpetContext cc = (CarpetContext) c;
         CarpetExpression ex = new CarpetExpression(module, module.code(), cc.source(), cc.origin());
         ex.getExpr().asATextSource();
+        ex.getExpr().cacheTokensIn(scriptServer().moduleCache);
         ex.scriptRunCommand(this, cc.origin());
     }
 
@@ -970,6 +991,12 @@ public class CarpetScriptHost extends ScriptHost
             {
                 dumpState();
             }
+            if (keyValueStore != null)
+            {
+                writeKeyValueStore(keyValueStore);
+            }
+            DataFileWriter.flushAll();
+            TextFileAppender.closeAll();
         }
     }
 
@@ -1029,7 +1056,7 @@ public class CarpetScriptHost extends ScriptHost
 
     public boolean appendLogFile(FileArgument fdesc, List<String> data)
     {
-        return (!isDefaultApp() || fdesc.isShared) && fdesc.appendToTextFile(main, data); // if belongs to an app, cannot be default host.
+        return (!isDefaultApp() || fdesc.isShared) && fdesc.appendToTextFile(main, data, logSizeLimit); // if belongs to an app, cannot be default host.
     }
 
     public List<String> readTextResource(FileArgument fdesc)
@@ -1053,6 +1080,54 @@ public class CarpetScriptHost extends ScriptHost
         return fdesc.findPathAndApply(main, action);
     }
 
+    /**
+     * @return key-value store of the app, opened on first use
+     */
+    public KeyValueStore getKeyValueStore()
+    {
+        if (parent != null)
+        {
+            return ((CarpetScriptHost) parent).getKeyValueStore();
+        }
+        if (main == null)
+        {
+            throw new InternalExpressionException("Key-value store can only be used by apps");
+        }
+        synchronized (this)
+        {
+            if (keyValueStore == null)
+            {
+                try
+                {
+                    keyValueStore = KeyValueStore.open(scriptServer().resolveResource(main.name() + ".data/store.kv"));
+                }
+                catch (IOException e)
+                {
+                    CarpetScriptServer.LOG.warn("IOException when opening key-value store", e);
+                    throw new ThrowStatement("Unable to open key-value store of " + main.name() + ": " + e.getMessage(), Throwables.IO_EXCEPTION);
+                }
+            }
+            return keyValueStore;
+        }
+    }
+
+    /**
+     * Writes pending changes of the key-value store of the app right away
+     */
+    public void commitKeyValueStore()
+    {
+        KeyValueStore store = getKeyValueStore();
+        try
+        {
+            store.commit();
+        }
+        catch (IOException e)
+        {
+            CarpetScriptServer.LOG.warn("IOException when writing key-value store of " + getName(), e);
+            throw new ThrowStatement("Unable to write key-value store of " + getName() + ": " + e.getMessage(), Throwables.IO_EXCEPTION);
+        }
+    }
+
     public void tick()
     {
         if (this.saveTimeout > 0)
@@ -1063,6 +1138,24 @@ public class CarpetScriptHost extends ScriptHost
                 dumpState();
             }
         }
+        KeyValueStore store = keyValueStore;
+        if (store != null && store.pendingMillis() >= KEY_VALUE_COMMIT_MILLIS)
+        {
+            store.commitInBackground();
+        }
+    }
+
+    private void writeKeyValueStore(KeyValueStore store)
+    {
+        try
+        {
+            store.commit();
+        }
+        catch (IOException e)
+        {
+            // changes stay in memory and get written with the next commit
+            CarpetScriptServer.LOG.warn("IOException when writing key-value store of " + getName(), e);
+        }
     }
 
     public void setChatErrorSnooper(CommandSourceStack source)
@@ -1125,7 +1218,7 @@ public class CarpetScriptHost extends ScriptHost
         format += " ";
         List<String> stringsToFormat = new ArrayList<>();
         TreeMap<Integer, String> posToLocal = new TreeMap<>(); //Holds whether a local variable name is found at a specific index
-        for (String local : context.variables.keySet())
+        for (String local : context.getAllVariableNames())
         {
             int pos = line.indexOf(local);
             while (pos != -1)
@@ -1147,7 +1240,7 @@ public class CarpetScriptHost extends ScriptHost
             }
             stringsToFormat.add(format + line.substring(lastPos, foundLocal.getKey()));
             stringsToFormat.add(format + foundLocal.getValue());
-            Value val = context.variables.get(foundLocal.getValue()).evalValue(context);
+            Value val = context.getVariable(foundLocal.getValue()).evalValue(context);
             String type = val.getTypeString();
             String value;
             try
@@ -66,6 +66,8 @@ public class CarpetScriptServer extends ScriptServer
     public int tickDepth;
     private Set<String> holyMoly;
     public CarpetEventServer events;
+    public TaskMailbox taskMailbox;
+    public ModuleCache moduleCache;
 
     private static final List<Module> bundledModuleData = new ArrayList<>();
     private static final List<Module> ruleModuleData = new ArrayList<>();
@@ -116,7 +118,11 @@ public class CarpetScriptServer extends ScriptServer
 
     private void init()
     {
+        // parsed blocks and items from a previous server refer to its registries
+        ParseCache.invalidateAll();
         events = new CarpetEventServer(this);
+        taskMailbox = new TaskMailbox(server);
+        moduleCache = new ModuleCache(server.getWorldPath(LevelResource.ROOT).resolve("scripts/.cache"), Carpet.getCarpetVersion());
         modules = new HashMap<>();
         unloadableModules = new HashSet<>();
         tickStart = 0L;
@@ -407,6 +413,16 @@ public class CarpetScriptServer extends ScriptServer
             return null;
         });
         token.run();
+        token = Carpet.startProfilerSection("Scarpet deferred events");
+        events.handleEvents.getWhileDisabled(() -> {
+            events.flushBatches();
+            events.budget.tick();
+            return null;
+        });
+        token.run();
+        token = Carpet.startProfilerSection("Scarpet docked tasks");
+        taskMailbox.tick();
+        token.run();
         token = Carpet.startProfilerSection("Scarpet app data");
         for (CarpetScriptHost host : modules.values())
         {
@@ -423,7 +439,11 @@ public class CarpetScriptServer extends ScriptServer
             host.onClose();
             events.removeAllHostEvents(host);
         }
+        // files written by commands outside of apps, like shared files from /script run
+        DataFileWriter.flushAll();
+        TextFileAppender.closeAll();
         stopAll = true;
+        taskMailbox.close();
     }
 
     public void onPlayerJoin(ServerPlayer player)
@@ -467,16 +487,49 @@ public class CarpetScriptServer extends ScriptServer
         }
     }
 
+    /**
+     * Reloads apps which code, or code of any of the modules they imported, changed since they were loaded.
+     * Apps that didn't change keep running as they are, with their global state, events and scheduled calls.
+     * Their commands get registered again by {@link #reAddCommands()} once the server reloads its resources.
+     */
     public void reload(MinecraftServer server)
     {
         Map<String, TransferData> apps = new HashMap<>();
-        modules.forEach((s, h) -> apps.put(s, new TransferData(h)));
-        apps.keySet().forEach(s -> removeScriptHost(server.createCommandSourceStack(), s, false, false));
-        CarpetEventServer.Event.clearAllBuiltinEvents();
-        init();
+        modules.forEach((s, h) -> {
+            if (!isUpToDate(h))
+            {
+                apps.put(s, new TransferData(h));
+            }
+        });
+        LOG.info("Reloading " + apps.size() + " out of " + modules.size() + " apps");
+        apps.keySet().forEach(s -> removeScriptHost(server.createCommandSourceStack(), s, false, apps.get(s).isRuleApp));
         apps.forEach((s, data) -> addScriptHost(server.createCommandSourceStack(), s, data.commandValidator, data.perUser, false, data.isRuleApp, null, data.override));
     }
 
+    /**
+     * @return whether all modules the app loaded still have the same code
+     */
+    private boolean isUpToDate(CarpetScriptHost host)
+    {
+        for (Module module : host.loadedModules())
+        {
+            Module current;
+            if (module == host.main)
+            {
+                current = host.isRuleApp ? getRuleModule(module.name()) : getModule(module.name(), false);
+            }
+            else
+            {
+                current = getModule(module.name(), true);
+            }
+            if (!module.equals(current))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public void reAddCommands()
     {
         modules.values().forEach(host -> host.addAppCommands(s -> {
@@ -5,9 +5,12 @@ import carpet.script.value.ThreadValue;
 import carpet.script.value.Value;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+import org.jspecify.annotations.Nullable;
+
 public class Context
 {
     public enum Type
@@ -27,46 +30,137 @@ public class Context
     public static final Type LVALUE = Type.LVALUE;
     public static final Type MAPDEF = Type.MAPDEF;
 
+    /**
+     * Variables that don't have a slot in the frame layout, or all of them if the context has no layout
+     */
     public Map<String, LazyValue> variables = new HashMap<>();
 
     public final ScriptHost host;
 
     private ThreadValue threadContext = null;
 
+    @Nullable
+    private FrameLayout frame = null;
+    @Nullable
+    private LazyValue[] slots = null;
+
     public Context(ScriptHost host)
     {
         this.host = host;
     }
 
+    @Nullable
     public LazyValue getVariable(String name)
     {
+        if (frame != null)
+        {
+            int slot = frame.slotOf(name);
+            if (slot >= 0)
+            {
+                return slots[slot];
+            }
+        }
         return variables.get(name);
     }
 
+    /**
+     * Fast access to a local resolved at compile time.
+     *
+     * @return the variable, or null if it is not set or this context uses a different layout,
+     * in which case the caller should resolve it by name
+     */
+    @Nullable
+    public LazyValue getLocalVariable(FrameLayout layout, int slot)
+    {
+        return frame == layout ? slots[slot] : null;
+    }
+
     public void setVariable(String name, LazyValue lv)
     {
+        if (frame != null)
+        {
+            int slot = frame.slotOf(name);
+            if (slot >= 0)
+            {
+                slots[slot] = lv;
+                return;
+            }
+        }
         variables.put(name, lv);
     }
 
+    public void setLocalVariable(FrameLayout layout, int slot, LazyValue lv)
+    {
+        if (frame == layout)
+        {
+            slots[slot] = lv;
+        }
+        else
+        {
+            setVariable(layout.nameOf(slot), lv);
+        }
+    }
+
     public void delVariable(String variable)
     {
+        if (frame != null)
+        {
+            int slot = frame.slotOf(variable);
+            if (slot >= 0)
+            {
+                slots[slot] = null;
+                return;
+            }
+        }
         variables.remove(variable);
     }
 
     public void removeVariablesMatching(String varname)
     {
+        if (frame != null)
+        {
+            for (int i = 0; i < slots.length; i++)
+            {
+                if (frame.nameOf(i).startsWith(varname))
+                {
+                    slots[i] = null;
+                }
+            }
+        }
         variables.entrySet().removeIf(e -> e.getKey().startsWith(varname));
     }
 
     public Context with(String variable, LazyValue lv)
     {
-        variables.put(variable, lv);
+        setVariable(variable, lv);
         return this;
     }
 
     public Set<String> getAllVariableNames()
     {
-        return variables.keySet();
+        if (frame == null)
+        {
+            return variables.keySet();
+        }
+        Set<String> names = new HashSet<>(variables.keySet());
+        for (int i = 0; i < slots.length; i++)
+        {
+            if (slots[i] != null)
+            {
+                names.add(frame.nameOf(i));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Makes this context operate on the same variables as the other one, so changes are visible in both
+     */
+    public void inheritVariables(Context other)
+    {
+        variables = other.variables;
+        frame = other.frame;
+        slots = other.slots;
     }
 
     public Context recreate()
@@ -77,6 +171,19 @@ public class Context
         return ctx;
     }
 
+    /**
+     * Creates a fresh function frame with locals stored in slots according to the layout
+     */
+    public Context recreate(FrameLayout layout)
+    {
+        Context ctx = duplicate();
+        ctx.threadContext = threadContext;
+        ctx.frame = layout;
+        ctx.slots = new LazyValue[layout.size()];
+        ctx.initialize();
+        return ctx;
+    }
+
     public void setThreadContext(ThreadValue callingThread)
     {
         this.threadContext = callingThread;
@@ -90,9 +197,9 @@ public class Context
     protected void initialize()
     {
         //special variables for second order functions so we don't need to check them all the time
-        variables.put("_", (c, t) -> Value.ZERO);
-        variables.put("_i", (c, t) -> Value.ZERO);
-        variables.put("_a", (c, t) -> Value.ZERO);
+        setVariable("_", (c, t) -> Value.ZERO);
+        setVariable("_i", (c, t) -> Value.ZERO);
+        setVariable("_a", (c, t) -> Value.ZERO);
     }
 
     public Context duplicate()
@@ -145,12 +252,25 @@ public class Context
             return null;
         }
 
+        @Override
+        public LazyValue getLocalVariable(FrameLayout layout, int slot)
+        {
+            badProgrammer();
+            return null;
+        }
+
         @Override
         public void setVariable(String name, LazyValue lv)
         {
             badProgrammer();
         }
 
+        @Override
+        public void setLocalVariable(FrameLayout layout, int slot, LazyValue lv)
+        {
+            badProgrammer();
+        }
+
         @Override
         public void delVariable(String variable)
         {
@@ -177,6 +297,12 @@ public class Context
             return null;
         }
 
+        @Override
+        public void inheritVariables(Context other)
+        {
+            badProgrammer();
+        }
+
         @Override
         public Context recreate()
         {
@@ -184,6 +310,13 @@ public class Context
             return null;
         }
 
+        @Override
+        public Context recreate(FrameLayout layout)
+        {
+            badProgrammer();
+            return null;
+        }
+
         @Override
         protected void initialize()
         {
@@ -0,0 +1,180 @@
+package carpet.script;
+
+import carpet.script.argument.FileArgument;
+import carpet.script.exception.ThrowStatement;
+import net.minecraft.nbt.Tag;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes nbt files of apps on a background thread, so saving a large app state doesn't stall the server tick.
+ * Written tags are copied when queued, and repeated writes of the same file within {@link #COALESCE_MILLIS} only write
+ * the last of them. Reads see queued writes, so apps don't notice the delay. If writing a file in the background fails,
+ * its tag stays queued, and the next write of that file happens right away, so the error gets reported to the app.
+ * Access to each file is guarded by its own lock from {@link #lockFor(Path)} instead of one lock for all files of all apps.
+ */
+public class DataFileWriter
+{
+    /**
+     * Time writes to the same file are collected for before the last one of them gets written to disk
+     */
+    public static final long COALESCE_MILLIS = 1000L;
+    private static final int LOCK_STRIPES = 64;
+
+    private static final Object[] locks = new Object[LOCK_STRIPES];
+    private static final Map<Path, Tag> pending = new ConcurrentHashMap<>();
+    private static final Set<Path> failed = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Scarpet data writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static
+    {
+        for (int i = 0; i < LOCK_STRIPES; i++)
+        {
+            locks[i] = new Object();
+        }
+    }
+
+    private DataFileWriter()
+    {
+    }
+
+    /**
+     * @return lock to hold while accessing the file. Different files may share a lock.
+     */
+    public static Object lockFor(Path file)
+    {
+        int hash = key(file).hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Queues a copy of the tag to be written to the file, or writes it right away if the last background write
+     * of the file failed
+     *
+     * @throws ThrowStatement if the file was written right away and that failed too
+     */
+    public static void write(Path file, Tag tag)
+    {
+        Path key = key(file);
+        if (failed.contains(key))
+        {
+            synchronized (lockFor(key))
+            {
+                pending.remove(key);
+                FileArgument.writeTagDisk(tag, key, false);
+                failed.remove(key);
+            }
+            return;
+        }
+        if (pending.put(key, tag.copy()) == null)
+        {
+            executor.schedule(() -> flush(key), COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return tag queued to be written to the file, or read from disk if there is none, or null if the file doesn't exist
+     */
+    @Nullable
+    public static Tag read(Path file)
+    {
+        Path key = key(file);
+        synchronized (lockFor(key))
+        {
+            Tag queued = pending.get(key);
+            if (queued != null)
+            {
+                return queued.copy();
+            }
+            return Files.isRegularFile(key) ? FileArgument.readTag(key) : null;
+        }
+    }
+
+    /**
+     * Drops queued write of the file and removes it from disk
+     *
+     * @return true if the file existed, on disk or in the queue
+     */
+    public static boolean delete(Path file) throws IOException
+    {
+        Path key = key(file);
+        synchronized (lockFor(key))
+        {
+            boolean queued = pending.remove(key) != null;
+            failed.remove(key);
+            return Files.deleteIfExists(key) || queued;
+        }
+    }
+
+    /**
+     * Writes queued tag of the file right away, if there is one
+     */
+    public static void flush(Path file)
+    {
+        Path key = key(file);
+        synchronized (lockFor(key))
+        {
+            Tag tag = pending.remove(key);
+            if (tag == null)
+            {
+                return;
+            }
+            try
+            {
+                FileArgument.writeTagDisk(tag, key, false);
+                failed.remove(key);
+            }
+            catch (ThrowStatement e)
+            {
+                // already logged, kept for reads and reported to the app on the next write of the file
+                pending.putIfAbsent(key, tag);
+                failed.add(key);
+            }
+        }
+    }
+
+    /**
+     * Writes queued tags of all files in the folder right away, so they show up in listings
+     */
+    public static void flushFolder(Path folder)
+    {
+        Path root = key(folder);
+        for (Path file : new ArrayList<>(pending.keySet()))
+        {
+            if (file.startsWith(root))
+            {
+                flush(file);
+            }
+        }
+    }
+
+    /**
+     * Writes all queued tags right away, blocking until done
+     */
+    public static void flushAll()
+    {
+        List<Path> files = new ArrayList<>(pending.keySet());
+        files.forEach(DataFileWriter::flush);
+    }
+
+    private static Path key(Path file)
+    {
+        return file.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,182 @@
+package carpet.script;
+
+import carpet.script.CarpetEventServer.Callback;
+import carpet.script.CarpetEventServer.CallbackList;
+import carpet.script.value.Value;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import net.minecraft.commands.CommandSourceStack;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of time apps spend handling each event in the current tick. Once an app handler of an event takes more than
+ * its budget, further calls of that handler for events that can't be cancelled are put in a queue and run in later ticks,
+ * so a slow app makes its own event handling lag behind instead of slowing down the game.
+ */
+public class EventBudget
+{
+    /**
+     * Time an app can spend handling one event type in a tick before its calls get deferred
+     */
+    public static final long HANDLER_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    /**
+     * Time spent in a tick running deferred calls
+     */
+    public static final long DEFERRED_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /**
+     * Maximum number of deferred calls. Calls deferred when the queue is full are dropped.
+     */
+    public static final int QUEUE_LIMIT = 4096;
+
+    private record Handler(CallbackList list, @Nullable String host)
+    {
+    }
+
+    private record DeferredCall(Handler handler, Callback callback, CommandSourceStack source, List<Value> args)
+    {
+    }
+
+    public static class AppStats
+    {
+        public long overruns;
+        public long deferred;
+        public long dropped;
+        public int waiting;
+    }
+
+    private final Object2LongOpenHashMap<Handler> spent = new Object2LongOpenHashMap<>();
+    private final Object2IntOpenHashMap<Handler> waiting = new Object2IntOpenHashMap<>();
+    private final Deque<DeferredCall> queue = new ArrayDeque<>();
+    private final Map<String, AppStats> stats = new HashMap<>();
+
+    /**
+     * @return whether the call should go to the deferred queue instead of running now, because the app went over
+     * its budget for this event, or still has deferred calls of it waiting
+     */
+    public synchronized boolean shouldDefer(CallbackList list, Callback callback)
+    {
+        Handler handler = new Handler(list, callback.host);
+        return waiting.getInt(handler) > 0 || spent.getLong(handler) > HANDLER_BUDGET_NANOS;
+    }
+
+    public synchronized void record(CallbackList list, Callback callback, long nanos)
+    {
+        Handler handler = new Handler(list, callback.host);
+        long before = spent.getLong(handler);
+        spent.put(handler, before + nanos);
+        if (before <= HANDLER_BUDGET_NANOS && before + nanos > HANDLER_BUDGET_NANOS)
+        {
+            statsFor(callback.host).overruns++;
+        }
+    }
+
+    public synchronized void defer(CallbackList list, Callback callback, CommandSourceStack source, List<Value> args)
+    {
+        AppStats appStats = statsFor(callback.host);
+        if (queue.size() >= QUEUE_LIMIT)
+        {
+            appStats.dropped++;
+            return;
+        }
+        Handler handler = new Handler(list, callback.host);
+        queue.add(new DeferredCall(handler, callback, source, args));
+        waiting.addTo(handler, 1);
+        appStats.deferred++;
+        appStats.waiting++;
+    }
+
+    /**
+     * Starts a new budget period and runs deferred calls until they are done or the time for them runs out
+     */
+    public void tick()
+    {
+        synchronized (this)
+        {
+            spent.clear();
+        }
+        long start = System.nanoTime();
+        DeferredCall call;
+        while (System.nanoTime() - start < DEFERRED_BUDGET_NANOS && (call = poll()) != null)
+        {
+            if (call.callback().execute(call.source(), call.args()) == CarpetEventServer.CallbackResult.FAIL)
+            {
+                // same as failing regular calls, and without running its other deferred calls that would fail too
+                call.handler().list().removeCall(call.callback());
+                dropCalls(call.callback());
+            }
+        }
+    }
+
+    /**
+     * Drops deferred calls of the callback
+     */
+    private synchronized void dropCalls(Callback callback)
+    {
+        queue.removeIf(call -> {
+            if (call.callback() != callback)
+            {
+                return false;
+            }
+            if (waiting.addTo(call.handler(), -1) == 1)
+            {
+                waiting.removeInt(call.handler());
+            }
+            statsFor(call.handler().host()).waiting--;
+            return true;
+        });
+    }
+
+    @Nullable
+    private synchronized DeferredCall poll()
+    {
+        DeferredCall call = queue.poll();
+        if (call != null)
+        {
+            if (waiting.addTo(call.handler(), -1) == 1)
+            {
+                waiting.removeInt(call.handler());
+            }
+            statsFor(call.handler().host()).waiting--;
+        }
+        return call;
+    }
+
+    /**
+     * Drops all deferred calls of the app
+     */
+    public synchronized void removeHost(String host)
+    {
+        queue.removeIf(call -> host.equals(call.handler().host()));
+        waiting.keySet().removeIf(handler -> host.equals(handler.host()));
+        stats.remove(host);
+    }
+
+    @Nullable
+    public synchronized AppStats getStats(String host)
+    {
+        AppStats appStats = stats.get(host);
+        if (appStats == null)
+        {
+            return null;
+        }
+        AppStats copy = new AppStats();
+        copy.overruns = appStats.overruns;
+        copy.deferred = appStats.deferred;
+        copy.dropped = appStats.dropped;
+        copy.waiting = appStats.waiting;
+        return copy;
+    }
+
+    private AppStats statsFor(@Nullable String host)
+    {
+        return stats.computeIfAbsent(host, h -> new AppStats());
+    }
+}
@@ -40,6 +40,7 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import org.jspecify.annotations.Nullable;
 import java.math.BigInteger;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -90,6 +91,17 @@ public class Expression
         module = mi;
     }
 
+    /**
+     * Cache of tokenized code to use when parsing this expression
+     */
+    @Nullable
+    private ModuleCache moduleCache = null;
+
+    public void cacheTokensIn(@Nullable ModuleCache cache)
+    {
+        moduleCache = cache;
+    }
+
     /**
      * Cached AST (Abstract Syntax Tree) (root) of the expression
      */
@@ -100,29 +112,160 @@ public class Expression
     private ExpressionNode root = null;
 
     /**
-     * script specific operatos and built-in functions
+     * Operators and built-in functions, built once and shared by all expressions using them.
+     * Built-ins can't refer to the expression they were added to, and need to use the one passed to them when called.
+     */
+    record FunctionTables(Map<String, ILazyOperator> operators, Map<String, ILazyFunction> functions,
+                          Map<String, String> functionalEquivalence, Map<String, String> functionalAliases)
+    {
+        private static final FunctionTables EMPTY = new FunctionTables(Map.of(), Map.of(), Map.of(), Map.of());
+    }
+
+    private static class LanguageTables
+    {
+        private static final FunctionTables TABLES = buildTables(FunctionTables.EMPTY, e -> {
+            Operators.apply(e);
+            ControlFlow.apply(e);
+            Functions.apply(e);
+            Arithmetic.apply(e);
+            Sys.apply(e);
+            Threading.apply(e);
+            Loops.apply(e);
+            DataStructures.apply(e);
+        });
+    }
+
+    /**
+     * @return tables of the core language, without any game specific functions
      */
-    private final Map<String, ILazyOperator> operators = new Object2ObjectOpenHashMap<>();
+    static FunctionTables languageTables()
+    {
+        return LanguageTables.TABLES;
+    }
+
+    /**
+     * Creates a new set of tables with functions of the base, and the ones added by the builder
+     */
+    static FunctionTables buildTables(FunctionTables base, Consumer<Expression> builder)
+    {
+        Expression template = new Expression("null", base);
+        builder.accept(template);
+        for (String op : template.operators.keySet())
+        {
+            assert template.functionalAliases.containsKey(op) : "Missing function for operator " + op;
+        }
+        // flattened, so expressions using the tables look their entries up in a single map
+        return new FunctionTables(
+                new Object2ObjectOpenHashMap<>(template.operators), new Object2ObjectOpenHashMap<>(template.functions),
+                new Object2ObjectOpenHashMap<>(template.functionalEquivalence), new Object2ObjectOpenHashMap<>(template.functionalAliases)
+        );
+    }
+
+    /**
+     * script specific operatos and built-in functions. Point to shared tables until the expression adds its own
+     * functions, so expressions only using built-ins don't need to create them
+     */
+    private Map<String, ILazyOperator> operators;
 
     public boolean isAnOperator(String opname)
     {
         return operators.containsKey(opname) || operators.containsKey(opname + "u");
     }
 
-    private final Map<String, ILazyFunction> functions = new Object2ObjectOpenHashMap<>();
+    private Map<String, ILazyFunction> functions;
 
     public Set<String> getFunctionNames()
     {
-        return functions.keySet();
+        return Collections.unmodifiableSet(functions.keySet());
+    }
+
+    private Map<String, String> functionalEquivalence;
+    private Map<String, String> functionalAliases;
+    private boolean sharedTables;
+
+    /**
+     * Puts overlays over shared tables before they get modified, so the expression keeps its own entries
+     * without copying all built-ins
+     */
+    private void ownTables()
+    {
+        if (sharedTables)
+        {
+            operators = new OverlayMap<>(operators);
+            functions = new OverlayMap<>(functions);
+            functionalEquivalence = new OverlayMap<>(functionalEquivalence);
+            functionalAliases = new OverlayMap<>(functionalAliases);
+            sharedTables = false;
+        }
+    }
+
+    /**
+     * Entries added by an expression on top of shared tables, which are looked up first
+     */
+    private static final class OverlayMap<V> extends AbstractMap<String, V>
+    {
+        private final Map<String, V> base;
+        private final Map<String, V> own = new Object2ObjectOpenHashMap<>();
+        @Nullable
+        private Set<Map.Entry<String, V>> entries;
+
+        private OverlayMap(Map<String, V> base)
+        {
+            this.base = base;
+        }
+
+        @Override
+        public V get(Object key)
+        {
+            V value = own.get(key);
+            return value != null ? value : base.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            return own.containsKey(key) || base.containsKey(key);
+        }
+
+        @Override
+        public V put(String key, V value)
+        {
+            V previous = get(key);
+            own.put(key, value);
+            entries = null;
+            return previous;
+        }
+
+        @Override
+        public Set<Map.Entry<String, V>> entrySet()
+        {
+            if (entries == null)
+            {
+                Map<String, V> merged = new Object2ObjectOpenHashMap<>(base);
+                merged.putAll(own);
+                entries = Collections.unmodifiableMap(merged).entrySet();
+            }
+            return entries;
+        }
     }
 
-    private final Map<String, String> functionalEquivalence = new Object2ObjectOpenHashMap<>();
-    private final Map<String, String> functionalAliases = new Object2ObjectOpenHashMap<>();
+    private void putOperator(String surface, ILazyOperator operator)
+    {
+        ownTables();
+        operators.put(surface, operator);
+    }
+
+    private void putFunction(String name, ILazyFunction function)
+    {
+        ownTables();
+        functions.put(name, function);
+    }
 
     private void addFunctionalEquivalence(String operator, String function)
     {
         assert operators.containsKey(operator);
         assert functions.containsKey(function);
+        ownTables();
         functionalEquivalence.put(operator, function);
         functionalAliases.put(operator, function);
     }
@@ -130,6 +273,7 @@ public class Expression
     {
         assert operators.containsKey(operator);
         assert functions.containsKey(function);
+        ownTables();
         functionalAliases.put(operator, function);
     }
 
@@ -208,7 +352,7 @@ public class Expression
     public void addLazyUnaryOperator(String surface, String function, int precedence, boolean leftAssoc, boolean pure, Function<Context.Type, Context.Type> staticTyper,
                                      TriFunction<Context, Context.Type, LazyValue, LazyValue> lazyfun)
     {
-        operators.put(surface + "u", new AbstractLazyOperator(precedence, leftAssoc)
+        putOperator(surface + "u", new AbstractLazyOperator(precedence, leftAssoc)
         {
             @Override
             public boolean pure()
@@ -242,7 +386,7 @@ public class Expression
             }
         });
 
-        functions.put(function, new AbstractLazyFunction(1, function)
+        putFunction(function, new AbstractLazyFunction(1, function)
         {
             @Override
             public boolean pure()
@@ -282,7 +426,7 @@ public class Expression
     public void addLazyBinaryOperatorWithDelegation(String surface, String function, int precedence, boolean leftAssoc, boolean pure,
                                                     SexFunction<Context, Context.Type, Expression, Token, LazyValue, LazyValue, LazyValue> lazyfun)
     {
-        operators.put(surface, new AbstractLazyOperator(precedence, leftAssoc)
+        putOperator(surface, new AbstractLazyOperator(precedence, leftAssoc)
         {
             @Override
             public boolean pure()
@@ -310,7 +454,7 @@ public class Expression
             }
         });
 
-        functions.put(function, new AbstractLazyFunction(2, function)
+        putFunction(function, new AbstractLazyFunction(2, function)
         {
             @Override
             public boolean pure()
@@ -343,13 +487,13 @@ public class Expression
 
     public void addCustomFunction(String name, ILazyFunction fun)
     {
-        functions.put(name, fun);
+        putFunction(name, fun);
     }
 
     public void addLazyFunctionWithDelegation(String name, int numpar, boolean pure, boolean transitive,
                                               QuinnFunction<Context, Context.Type, Expression, Token, List<LazyValue>, LazyValue> lazyfun)
     {
-        functions.put(name, new AbstractLazyFunction(numpar, name)
+        putFunction(name, new AbstractLazyFunction(numpar, name)
         {
             @Override
             public boolean pure()
@@ -382,7 +526,7 @@ public class Expression
     public void addFunctionWithDelegation(String name, int numpar, boolean pure, boolean transitive,
                                           QuinnFunction<Context, Context.Type, Expression, Token, List<Value>, Value> fun)
     {
-        functions.put(name, new AbstractLazyFunction(numpar, name)
+        putFunction(name, new AbstractLazyFunction(numpar, name)
         {
             @Override
             public boolean pure()
@@ -415,7 +559,7 @@ public class Expression
     public void addLazyBinaryOperator(String surface, String function, int precedence, boolean leftAssoc, boolean pure, Function<Context.Type, Context.Type> typer,
                                       QuadFunction<Context, Context.Type, LazyValue, LazyValue, LazyValue> lazyfun, TriFunction<Context, Context.Type, List<LazyValue>, LazyValue> multiFun)
     {
-        operators.put(surface, new AbstractLazyOperator(precedence, leftAssoc)
+        putOperator(surface, new AbstractLazyOperator(precedence, leftAssoc)
         {
 
             @Override
@@ -451,7 +595,7 @@ public class Expression
             }
         });
 
-        functions.put(function, new AbstractLazyFunction(-1, function)
+        putFunction(function, new AbstractLazyFunction(-1, function)
         {
             @Override
             public boolean pure()
@@ -492,7 +636,13 @@ public class Expression
     public void addLazyBinaryOperator(String surface, String function, int precedence, boolean leftAssoc, boolean pure, Function<Context.Type, Context.Type> typer,
                                       QuadFunction<Context, Context.Type, LazyValue, LazyValue, LazyValue> lazyfun)
     {
-        operators.put(surface, new AbstractLazyOperator(precedence, leftAssoc)
+        addLazyBinaryOperatorWithDelegation(surface, function, precedence, leftAssoc, pure, typer, (c, t, e, token, v1, v2) -> lazyfun.apply(c, t, v1, v2));
+    }
+
+    public void addLazyBinaryOperatorWithDelegation(String surface, String function, int precedence, boolean leftAssoc, boolean pure, Function<Context.Type, Context.Type> typer,
+                                                    SexFunction<Context, Context.Type, Expression, Token, LazyValue, LazyValue, LazyValue> lazyfun)
+    {
+        putOperator(surface, new AbstractLazyOperator(precedence, leftAssoc)
         {
 
             @Override
@@ -519,7 +669,7 @@ public class Expression
                 ILazyFunction.checkInterrupts();
                 try
                 {
-                    return lazyfun.apply(c, t, v1, v2);
+                    return lazyfun.apply(c, t, e, token, v1, v2);
                 }
                 catch (RuntimeException exc)
                 {
@@ -528,7 +678,7 @@ public class Expression
             }
         });
 
-        functions.put(function, new AbstractLazyFunction(2, function)
+        putFunction(function, new AbstractLazyFunction(2, function)
         {
             @Override
             public boolean pure()
@@ -553,7 +703,7 @@ public class Expression
             {
                 try
                 {
-                    return lazyfun.apply(c, t, v.get(0), v.get(1));
+                    return lazyfun.apply(c, t, e, token, v.get(0), v.get(1));
                 }
                 catch (RuntimeException exc)
                 {
@@ -568,7 +718,7 @@ public class Expression
     public void addBinaryContextOperator(String surface, String function, int precedence, boolean leftAssoc, boolean pure, boolean transitive,
                                          QuadFunction<Context, Context.Type, Value, Value, Value> fun)
     {
-        operators.put(surface, new AbstractLazyOperator(precedence, leftAssoc)
+        putOperator(surface, new AbstractLazyOperator(precedence, leftAssoc)
         {
             @Override
             public boolean pure()
@@ -597,7 +747,7 @@ public class Expression
             }
         });
 
-        functions.put(function, new AbstractLazyFunction(2, function)
+        putFunction(function, new AbstractLazyFunction(2, function)
         {
             @Override
             public boolean pure()
@@ -658,7 +808,7 @@ public class Expression
 
     public void addUnaryOperator(String surface, String function, boolean leftAssoc, Function<Value, Value> fun)
     {
-        operators.put(surface + "u", new AbstractUnaryOperator(Operators.precedence.get("unary+-!..."), leftAssoc)
+        putOperator(surface + "u", new AbstractUnaryOperator(Operators.precedence.get("unary+-!..."), leftAssoc)
         {
             @Override
             public Value evalUnary(Value v1)
@@ -666,7 +816,7 @@ public class Expression
                 return fun.apply(v1);
             }
         });
-        functions.put(function, new AbstractFunction(1, function)
+        putFunction(function, new AbstractFunction(1, function)
         {
             @Override
             public Value eval(List<Value> v1)
@@ -679,7 +829,7 @@ public class Expression
 
     public void addBinaryOperator(String surface, String function, int precedence, boolean leftAssoc, BiFunction<Value, Value, Value> fun, Function<List<Value>, Value> multiFun)
     {
-        operators.put(surface, new AbstractOperator(precedence, leftAssoc)
+        putOperator(surface, new AbstractOperator(precedence, leftAssoc)
         {
             @Override
             public Value eval(Value v1, Value v2) {
@@ -687,7 +837,7 @@ public class Expression
             }
         });
 
-        functions.put(function, new AbstractFunction(-1, function)
+        putFunction(function, new AbstractFunction(-1, function)
         {
             @Override
             public Value eval(List<Value> parameters)
@@ -700,14 +850,14 @@ public class Expression
 
     public void addBinaryOperator(String surface, String name, int precedence, boolean leftAssoc, BiFunction<Value, Value, Value> fun)
     {
-        operators.put(surface, new AbstractOperator(precedence, leftAssoc)
+        putOperator(surface, new AbstractOperator(precedence, leftAssoc)
         {
             @Override
             public Value eval(Value v1, Value v2) {
                 return fun.apply(v1, v2);
             }
         });
-        functions.put(name, new AbstractFunction(2, name)
+        putFunction(name, new AbstractFunction(2, name)
         {
             @Override
             public Value eval(List<Value> parameters)
@@ -722,7 +872,7 @@ public class Expression
 
     public void addUnaryFunction(String name, Function<Value, Value> fun)
     {
-        functions.put(name, new AbstractFunction(1, name)
+        putFunction(name, new AbstractFunction(1, name)
         {
             @Override
             public Value eval(List<Value> parameters)
@@ -734,7 +884,7 @@ public class Expression
 
     public void addImpureUnaryFunction(String name, Function<Value, Value> fun)
     {
-        functions.put(name, new AbstractFunction(1, name)
+        putFunction(name, new AbstractFunction(1, name)
         {
             @Override
             public boolean pure()
@@ -752,7 +902,7 @@ public class Expression
 
     public void addBinaryFunction(String name, BiFunction<Value, Value, Value> fun)
     {
-        functions.put(name, new AbstractFunction(2, name)
+        putFunction(name, new AbstractFunction(2, name)
         {
             @Override
             public Value eval(List<Value> parameters)
@@ -764,7 +914,7 @@ public class Expression
 
     public void addFunction(String name, Function<List<Value>, Value> fun)
     {
-        functions.put(name, new AbstractFunction(-1, name)
+        putFunction(name, new AbstractFunction(-1, name)
         {
             @Override
             public Value eval(List<Value> parameters)
@@ -776,7 +926,7 @@ public class Expression
 
     public void addImpureFunction(String name, Function<List<Value>, Value> fun)
     {
-        functions.put(name, new AbstractFunction(-1, name)
+        putFunction(name, new AbstractFunction(-1, name)
         {
             @Override
             public boolean pure()
@@ -799,13 +949,13 @@ public class Expression
 
     public void addMathematicalUnaryIntFunction(String name, DoubleToLongFunction fun)
     {
-        addUnaryFunction(name, (v) -> new NumericValue(fun.applyAsLong(NumericValue.asNumber(v).getDouble())));
+        addUnaryFunction(name, (v) -> NumericValue.shared(fun.applyAsLong(NumericValue.asNumber(v).getDouble())));
     }
 
     public void addMathematicalBinaryIntFunction(String name, LongBinaryOperator fun)
     {
         addBinaryFunction(name, (w, v) ->
-                new NumericValue(fun.applyAsLong(NumericValue.asNumber(w).getLong(), NumericValue.asNumber(v).getLong())));
+                NumericValue.shared(fun.applyAsLong(NumericValue.asNumber(w).getLong(), NumericValue.asNumber(v).getLong())));
     }
 
     public void addMathematicalBinaryFunction(String name, DoubleBinaryOperator fun)
@@ -817,7 +967,7 @@ public class Expression
 
     public void addLazyFunction(String name, int numParams, TriFunction<Context, Context.Type, List<LazyValue>, LazyValue> fun)
     {
-        functions.put(name, new AbstractLazyFunction(numParams, name)
+        putFunction(name, new AbstractLazyFunction(numParams, name)
         {
             @Override
             public boolean pure()
@@ -855,7 +1005,7 @@ public class Expression
 
     public void addLazyFunction(String name, TriFunction<Context, Context.Type, List<LazyValue>, LazyValue> fun)
     {
-        functions.put(name, new AbstractLazyFunction(-1, name)
+        putFunction(name, new AbstractLazyFunction(-1, name)
         {
             @Override
             public boolean pure()
@@ -887,7 +1037,7 @@ public class Expression
 
     public void addContextFunction(String name, int num_params, TriFunction<Context, Context.Type, List<Value>, Value> fun)
     {
-        functions.put(name, new AbstractLazyFunction(num_params, name)
+        putFunction(name, new AbstractLazyFunction(num_params, name)
         {
             @Override
             public boolean pure()
@@ -920,7 +1070,7 @@ public class Expression
 
     public void addTypedContextFunction(String name, int num_params, Context.Type reqType, TriFunction<Context, Context.Type, List<Value>, Value> fun)
     {
-        functions.put(name, new AbstractLazyFunction(num_params, name)
+        putFunction(name, new AbstractLazyFunction(num_params, name)
         {
             @Override
             public boolean pure()
@@ -957,6 +1107,11 @@ public class Expression
     }
 
     public FunctionValue createUserDefinedFunction(Context context, String name, Expression expr, Token token, List<String> arguments, String varArgs, List<String> outers, LazyValue code)
+    {
+        return createUserDefinedFunction(context, name, expr, token, arguments, varArgs, outers, code, null);
+    }
+
+    public FunctionValue createUserDefinedFunction(Context context, String name, Expression expr, Token token, List<String> arguments, String varArgs, List<String> outers, LazyValue code, @Nullable FrameLayout frame)
     {
         if (functions.containsKey(name))
         {
@@ -972,7 +1127,7 @@ public class Expression
             }
             else
             {
-                contextValues.put(outer, lv);
+                contextValues.put(outer, LazyValue.snapshot(context, lv));
             }
         }
         if (contextValues.isEmpty())
@@ -980,7 +1135,7 @@ public class Expression
             contextValues = null;
         }
 
-        FunctionValue result = new FunctionValue(expr, token, name, code, arguments, varArgs, contextValues);
+        FunctionValue result = new FunctionValue(expr, token, name, code, arguments, varArgs, contextValues, frame);
         // do not store lambda definitions
         if (!name.equals("_"))
         {
@@ -992,7 +1147,7 @@ public class Expression
     public void alias(String copy, String original)
     {
         ILazyFunction originalFunction = functions.get(original);
-        functions.put(copy, new ILazyFunction()
+        putFunction(copy, new ILazyFunction()
         {
             @Override
             public int getNumParams()
@@ -1034,6 +1189,18 @@ public class Expression
     }
 
 
+    @Nullable
+    ILazyOperator getOperator(String surface)
+    {
+        return operators.get(surface);
+    }
+
+    @Nullable
+    ILazyFunction getFunction(String name)
+    {
+        return functions.get(name);
+    }
+
     public void setAnyVariable(Context c, String name, LazyValue lv)
     {
         if (name.startsWith("global_"))
@@ -1067,25 +1234,44 @@ public class Expression
         return variable;
     }
 
+    /**
+     * Variable access for locals resolved to a frame slot at compile time. Falls back to the lookup by name
+     * if the slot is not set, or the code runs in a context with a different frame layout
+     */
+    public LazyValue getOrSetAnyVariable(Context c, String name, @Nullable FrameLayout frame, int slot)
+    {
+        if (frame != null)
+        {
+            LazyValue variable = c.getLocalVariable(frame, slot);
+            if (variable != null)
+            {
+                return variable;
+            }
+        }
+        return getOrSetAnyVariable(c, name);
+    }
+
     public static final Expression none = new Expression("null");
 
     /**
      * @param expression .
      */
     public Expression(String expression)
+    {
+        this(expression, LanguageTables.TABLES);
+    }
+
+    /**
+     * @param tables built-ins to use, shared with other expressions until this one adds functions of its own
+     */
+    Expression(String expression, FunctionTables tables)
     {
         this.expression = stripExpression(expression);
-        Operators.apply(this);
-        ControlFlow.apply(this);
-        Functions.apply(this);
-        Arithmetic.apply(this);
-        Sys.apply(this);
-        Threading.apply(this);
-        Loops.apply(this);
-        DataStructures.apply(this);
-        for(String op : operators.keySet()) {
-            assert functionalAliases.containsKey(op) : "Missing function for operator " + op;
-        }
+        operators = tables.operators();
+        functions = tables.functions();
+        functionalEquivalence = tables.functionalEquivalence();
+        functionalAliases = tables.functionalAliases();
+        sharedTables = true;
     }
 
     private String stripExpression(String expression)
@@ -1306,6 +1492,13 @@ public class Expression
         public List<ExpressionNode> args;
         public Token token;
         public List<Token> range;
+        /**
+         * Frame layout of the function body for function definitions, or the layout of the enclosing
+         * function for variables resolved to a local slot
+         */
+        @Nullable
+        public FrameLayout frame = null;
+        public int slot = -1;
         /**
          * The Value representation of the left parenthesis, used for parsing
          * varying numbers of function parameters.
@@ -1437,7 +1630,9 @@ public class Expression
                     }
                     else
                     {
-                        ExpressionNode newNode = new ExpressionNode(((c, t) -> getOrSetAnyVariable(c, token.surface).evalValue(c, t)), Collections.emptyList(), token);
+                        ExpressionNode newNode = new ExpressionNode(null, Collections.emptyList(), token);
+                        // slot gets resolved after the tree is built, so needs to be read from the node
+                        newNode.op = (c, t) -> getOrSetAnyVariable(c, token.surface, newNode.frame, newNode.slot).evalValue(c, t);
                         token.node = newNode;
                         nodeStack.push(newNode);
                     }
@@ -1529,15 +1724,24 @@ public class Expression
 
     private Pair<ExpressionNode, LazyValue> getAST(Context context, boolean optimize, boolean functional, @Nullable Consumer<String> logger)
     {
-        Tokenizer tokenizer = new Tokenizer(context, this, expression, allowComments, allowNewlineSubstitutions);
-        // stripping lousy but acceptable semicolons
-        List<Token> cleanedTokens = Tokenizer.postProcess(tokenizer.parseTokens());
+        List<Token> cleanedTokens = moduleCache == null ? null : moduleCache.load(expression, allowComments, allowNewlineSubstitutions);
+        if (cleanedTokens == null)
+        {
+            Tokenizer tokenizer = new Tokenizer(context, this, expression, allowComments, allowNewlineSubstitutions);
+            // stripping lousy but acceptable semicolons
+            cleanedTokens = Tokenizer.postProcess(tokenizer.parseTokens());
+            if (moduleCache != null)
+            {
+                moduleCache.store(expression, allowComments, allowNewlineSubstitutions, cleanedTokens);
+            }
+        }
 
         List<Token> rpn = shuntingYard(context, cleanedTokens);
         validate(context, rpn);
         ExpressionNode root = RPNToParseTree(rpn, context);
         if (!optimize && !functional)
         {
+            resolveLocalSlots(root, null);
             return Pair.of(root, root.op);
         }
 
@@ -1545,6 +1749,7 @@ public class Expression
         // flipping to full functional representation makes it little underperforming, might be related
         // to the fact that operators are running from a bigger pool or function execution is slower
         optimizeTree(root, optimizeOnlyContext, logger, optimize, functional);
+        resolveLocalSlots(root, null);
         if (!optimize) {
             return Pair.of(root, root.op);
         }
@@ -1904,7 +2109,73 @@ public class Expression
         return true;
     }
 
+    /**
+     * Assigns frame slots to local variables of user defined functions. Each function definition body gets
+     * its own layout, with function arguments, outer captures and all locals referenced in the body, and variable
+     * nodes in the body remember their slot. Code outside of function bodies, like the main module code, keeps
+     * using variables by name.
+     */
+    private void resolveLocalSlots(ExpressionNode node, @Nullable FrameLayout frame)
+    {
+        Token token = node.token;
+        if (token.type == Token.TokenType.VARIABLE)
+        {
+            if (frame != null && !token.surface.startsWith("global_"))
+            {
+                node.frame = frame;
+                node.slot = frame.slotFor(token.surface);
+            }
+            return;
+        }
+        if (!token.type.isFunctional() || node.op instanceof LazyValue.ContextFreeLazyValue)
+        {
+            return;
+        }
+        if ((token.surface.equals("->") || token.surface.equals("define")) && node.args.size() == 2)
+        {
+            // signature is evaluated in the defining scope, but names in it are the locals of the new frame
+            ExpressionNode signature = node.args.get(0);
+            resolveLocalSlots(signature, frame);
+            FrameLayout bodyFrame = new FrameLayout();
+            collectVariableNames(signature, bodyFrame);
+            node.frame = bodyFrame;
+            resolveLocalSlots(node.args.get(1), bodyFrame);
+            return;
+        }
+        for (ExpressionNode arg : node.args)
+        {
+            resolveLocalSlots(arg, frame);
+        }
+    }
+
+    private static void collectVariableNames(ExpressionNode node, FrameLayout frame)
+    {
+        if (node.token.type == Token.TokenType.VARIABLE)
+        {
+            if (!node.token.surface.startsWith("global_"))
+            {
+                frame.slotFor(node.token.surface);
+            }
+            return;
+        }
+        for (ExpressionNode arg : node.args)
+        {
+            collectVariableNames(arg, frame);
+        }
+    }
+
     private LazyValue extractOp(Context ctx, ExpressionNode node, Context.Type expectedType)
+    {
+        LazyValue extracted = extractNodeOp(ctx, node, expectedType);
+        if (!(node.op instanceof LazyValue.ContextFreeLazyValue))
+        {
+            // keep the tree in sync with the code that actually runs, so it can be used by the compiler
+            node.op = extracted;
+        }
+        return extracted;
+    }
+
+    private LazyValue extractNodeOp(Context ctx, ExpressionNode node, Context.Type expectedType)
     {
         if (node.op instanceof LazyValue.Constant)
         {
@@ -1940,7 +2211,15 @@ public class Expression
                 return (c, t) -> op.lazyEval(c, t, this, token, arg, arh).evalValue(c, t);
             }
             case VARIABLE:
-                return (c, t) -> getOrSetAnyVariable(c, token.surface).evalValue(c, t);
+            {
+                FrameLayout frame = node.frame;
+                int slot = node.slot;
+                if (frame == null)
+                {
+                    return (c, t) -> getOrSetAnyVariable(c, token.surface).evalValue(c, t);
+                }
+                return (c, t) -> getOrSetAnyVariable(c, token.surface, frame, slot).evalValue(c, t);
+            }
             case FUNCTION:
             {
                 ILazyFunction f = functions.get(token.surface);
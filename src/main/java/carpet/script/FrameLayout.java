@@ -0,0 +1,62 @@
+package carpet.script;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Layout of local variables of a user defined function body, resolved when the code is compiled.
+ * Each local name that appears in the body gets its own slot, so function frames can keep these locals
+ * in an array and compiled variable reads avoid hashing the name. Names that are only known at runtime,
+ * like ones created with {@code var()}, still go to the context variable map.
+ */
+public class FrameLayout
+{
+    /**
+     * Special variables that {@link Context#initialize()} sets in every frame, so they always get a slot
+     */
+    private static final List<String> BUILTIN_LOCALS = List.of("_", "_i", "_a");
+
+    private final Object2IntOpenHashMap<String> slots = new Object2IntOpenHashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    public FrameLayout()
+    {
+        slots.defaultReturnValue(-1);
+        BUILTIN_LOCALS.forEach(this::slotFor);
+    }
+
+    /**
+     * Returns the slot for the variable, allocating a new one if needed. Only used while the code is compiled.
+     */
+    public int slotFor(String name)
+    {
+        int slot = slots.getInt(name);
+        if (slot < 0)
+        {
+            slot = names.size();
+            names.add(name);
+            slots.put(name, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * @return slot of the variable, or -1 if the variable doesn't have a slot in this layout
+     */
+    public int slotOf(String name)
+    {
+        return slots.getInt(name);
+    }
+
+    public String nameOf(int slot)
+    {
+        return names.get(slot);
+    }
+
+    public int size()
+    {
+        return names.size();
+    }
+}
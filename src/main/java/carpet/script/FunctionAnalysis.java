@@ -0,0 +1,109 @@
+package carpet.script;
+
+import java.util.Set;
+
+/**
+ * Checks of user defined function bodies, done by walking their parse trees
+ */
+public final class FunctionAnalysis
+{
+    /**
+     * Functions that can read variables by name, so any variable can be used by the code
+     */
+    private static final Set<String> DYNAMIC_VARIABLE_ACCESS = Set.of("var", "vars");
+    /**
+     * Built-ins that are not pure, since they can't be folded into constants, but only work with values and variables
+     * of the calling context
+     */
+    private static final Set<String> CONTEXT_ONLY = Set.of(
+            "if", "while", "loop", "c_for", "for", "map", "filter", "first", "all", "reduce", "lazy_map", "lazy_filter",
+            "break", "continue", "return", "get", "has"
+    );
+    /**
+     * Assignments that are allowed on local variables. {@code +=} is not one of them, since it appends to lists and maps
+     * in place, which can be shared with the caller.
+     */
+    private static final Set<String> ASSIGNMENTS = Set.of("=", "assign");
+
+    private FunctionAnalysis()
+    {
+    }
+
+    /**
+     * @return false if the code can access variables by name, so the collected names are not complete
+     */
+    public static boolean collectVariableNames(Expression.ExpressionNode node, Set<String> names)
+    {
+        Token nodeToken = node.token;
+        if (nodeToken.type == Token.TokenType.VARIABLE)
+        {
+            names.add(nodeToken.surface);
+        }
+        else if (nodeToken.type == Token.TokenType.FUNCTION && DYNAMIC_VARIABLE_ACCESS.contains(nodeToken.surface))
+        {
+            return false;
+        }
+        for (Expression.ExpressionNode arg : node.args)
+        {
+            if (!collectVariableNames(arg, names))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the code only calls built-in functions without side effects and only assigns local variables,
+     * so running it can't affect anything else than its own result
+     */
+    public static boolean isPure(Expression expression, Expression.ExpressionNode node)
+    {
+        if (node.op instanceof LazyValue.Constant)
+        {
+            return true;
+        }
+        Token nodeToken = node.token;
+        switch (nodeToken.type)
+        {
+            case VARIABLE ->
+            {
+                if (nodeToken.surface.startsWith("global_"))
+                {
+                    return false;
+                }
+            }
+            case FUNCTION, OPERATOR, UNARY_OPERATOR ->
+            {
+                String name = nodeToken.surface;
+                if (ASSIGNMENTS.contains(name))
+                {
+                    if (node.args.isEmpty() || node.args.get(0).token.type != Token.TokenType.VARIABLE)
+                    {
+                        return false;
+                    }
+                }
+                else if (!CONTEXT_ONLY.contains(name))
+                {
+                    Fluff.EvalNode operation = nodeToken.type == Token.TokenType.FUNCTION ? expression.getFunction(name) : expression.getOperator(name);
+                    // user defined functions are not in the table of built-ins
+                    if (operation == null || !operation.pure())
+                    {
+                        return false;
+                    }
+                }
+            }
+            default ->
+            {
+            }
+        }
+        for (Expression.ExpressionNode arg : node.args)
+        {
+            if (!isPure(expression, arg))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
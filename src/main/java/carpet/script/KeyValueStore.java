@@ -0,0 +1,423 @@
+package carpet.script;
+
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.Tag;
+import net.minecraft.nbt.TagTypes;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Key-value store of an app, kept as a log of changes in a single file, so changing an entry appends only that change
+ * instead of writing the whole app state. Changes are collected in memory and appended in batches with {@link #commit()},
+ * and the log is rewritten with only the live entries once most of it is taken by overwritten or removed entries.
+ * All entries are kept in memory sorted by key, for range scans. Disk access happens outside of the lock guarding
+ * the entries, so commits running in the background with {@link #commitInBackground()} don't block readers and writers.
+ */
+public class KeyValueStore
+{
+    private static final int MAGIC = 0x53434B56;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    /**
+     * Log is only compacted once it's bigger than this, and more than half of it is garbage
+     */
+    private static final long MIN_COMPACTION_SIZE = 1 << 20;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Scarpet key-value writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private record Entry(Tag tag, int size)
+    {
+    }
+
+    private final Path file;
+    private final NavigableMap<String, Entry> entries = new TreeMap<>();
+    private final ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    /**
+     * Held while writing to disk, so commits don't overlap
+     */
+    private final Object fileLock = new Object();
+    private final AtomicBoolean commitQueued = new AtomicBoolean();
+    private long logSize = HEADER_SIZE;
+    private long liveSize = 0;
+    private long batchStart = 0;
+
+    private KeyValueStore(Path file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Reads the store from the file. A torn or corrupted record at the end of the log, for example after a crash while
+     * appending, is dropped with everything after it.
+     */
+    public static KeyValueStore open(Path file) throws IOException
+    {
+        KeyValueStore store = new KeyValueStore(file);
+        if (!Files.exists(file))
+        {
+            return store;
+        }
+        long valid = HEADER_SIZE;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+            {
+                throw new IOException("Not a key-value store: " + file);
+            }
+            while (true)
+            {
+                int length;
+                long checksum;
+                byte[] record;
+                try
+                {
+                    length = in.readInt();
+                    checksum = in.readLong();
+                    if (length <= 0)
+                    {
+                        break;
+                    }
+                    record = in.readNBytes(length);
+                }
+                catch (EOFException e)
+                {
+                    break;
+                }
+                if (record.length != length || crc(record) != checksum)
+                {
+                    break;
+                }
+                store.replay(record);
+                valid += recordSize(length);
+            }
+        }
+        store.logSize = valid;
+        if (Files.size(file) > valid)
+        {
+            CarpetScriptServer.LOG.warn("Dropping broken end of key-value store {}", file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+            {
+                channel.truncate(valid);
+            }
+        }
+        return store;
+    }
+
+    @Nullable
+    public synchronized Tag get(String key)
+    {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.tag().copy();
+    }
+
+    public synchronized void put(String key, Tag tag)
+    {
+        Tag copy = tag.copy();
+        byte[] record = record(PUT, key, copy);
+        append(record);
+        remove(key);
+        entries.put(key, new Entry(copy, recordSize(record.length)));
+        liveSize += recordSize(record.length);
+    }
+
+    /**
+     * @return true if the key was present
+     */
+    public synchronized boolean delete(String key)
+    {
+        if (!entries.containsKey(key))
+        {
+            return false;
+        }
+        append(record(DELETE, key, null));
+        remove(key);
+        return true;
+    }
+
+    /**
+     * @param from first key to include, or null to start from the first key
+     * @param to key to stop before, or null to go to the last key
+     * @return up to {@code limit} keys and their values, ordered by key
+     */
+    public synchronized List<Map.Entry<String, Tag>> scan(@Nullable String from, @Nullable String to, int limit)
+    {
+        NavigableMap<String, Entry> range = entries;
+        if (from != null && to != null)
+        {
+            range = from.compareTo(to) < 0 ? entries.subMap(from, true, to, false) : new TreeMap<>();
+        }
+        else if (from != null)
+        {
+            range = entries.tailMap(from, true);
+        }
+        else if (to != null)
+        {
+            range = entries.headMap(to, false);
+        }
+        List<Map.Entry<String, Tag>> result = new ArrayList<>(Math.min(limit, range.size()));
+        for (Map.Entry<String, Entry> entry : range.entrySet())
+        {
+            if (result.size() >= limit)
+            {
+                break;
+            }
+            result.add(Map.entry(entry.getKey(), entry.getValue().tag().copy()));
+        }
+        return result;
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * @return time in milliseconds since the oldest change that wasn't committed yet, or -1 if there are none
+     */
+    public synchronized long pendingMillis()
+    {
+        return batch.size() == 0 ? -1 : System.currentTimeMillis() - batchStart;
+    }
+
+    /**
+     * Appends collected changes to the log and syncs it to disk, compacting the log if it got too big.
+     * If writing fails, the changes are kept for the next commit.
+     */
+    public void commit() throws IOException
+    {
+        synchronized (fileLock)
+        {
+            byte[] changes;
+            long position;
+            List<Map.Entry<String, Tag>> live = null;
+            synchronized (this)
+            {
+                if (batch.size() == 0)
+                {
+                    return;
+                }
+                changes = batch.toByteArray();
+                position = logSize;
+                if (logSize + changes.length > MIN_COMPACTION_SIZE && liveSize * 2 < logSize + changes.length)
+                {
+                    // stored tags are never modified, so the snapshot can be written without holding the lock
+                    live = new ArrayList<>(entries.size());
+                    for (Map.Entry<String, Entry> entry : entries.entrySet())
+                    {
+                        live.add(Map.entry(entry.getKey(), entry.getValue().tag()));
+                    }
+                }
+                batch.reset();
+            }
+            try
+            {
+                long size = live != null ? compact(live) : appendToLog(changes, position);
+                synchronized (this)
+                {
+                    logSize = size;
+                }
+            }
+            catch (IOException e)
+            {
+                synchronized (this)
+                {
+                    byte[] newer = batch.toByteArray();
+                    batch.reset();
+                    batch.writeBytes(changes);
+                    batch.writeBytes(newer);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Queues a {@link #commit()} on a background thread shared by all stores, unless one is already queued.
+     * Failures are logged, and the changes are written with the next commit.
+     */
+    public void commitInBackground()
+    {
+        if (commitQueued.compareAndSet(false, true))
+        {
+            executor.execute(() -> {
+                commitQueued.set(false);
+                try
+                {
+                    commit();
+                }
+                catch (IOException e)
+                {
+                    CarpetScriptServer.LOG.warn("IOException when writing key-value store " + file, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return size of the log after appending the changes
+     */
+    private long appendToLog(byte[] changes, long position) throws IOException
+    {
+        Files.createDirectories(file.getParent());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+        {
+            if (channel.size() < HEADER_SIZE)
+            {
+                channel.write(ByteBuffer.wrap(header()), 0);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(changes);
+            long end = position;
+            while (buffer.hasRemaining())
+            {
+                end += channel.write(buffer, end);
+            }
+            channel.force(false);
+            return end;
+        }
+    }
+
+    /**
+     * Writes live entries to a new log, replacing the old one
+     *
+     * @return size of the new log
+     */
+    private long compact(List<Map.Entry<String, Tag>> live) throws IOException
+    {
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + "_tmp");
+        long size = HEADER_SIZE;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp)))
+        {
+            out.write(header());
+            for (Map.Entry<String, Tag> entry : live)
+            {
+                byte[] record = record(PUT, entry.getKey(), entry.getValue());
+                out.write(frame(record));
+                size += recordSize(record.length);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE))
+        {
+            channel.force(false);
+        }
+        try
+        {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return size;
+    }
+
+    private void remove(String key)
+    {
+        Entry previous = entries.remove(key);
+        if (previous != null)
+        {
+            liveSize -= previous.size();
+        }
+    }
+
+    private void append(byte[] record)
+    {
+        if (batch.size() == 0)
+        {
+            batchStart = System.currentTimeMillis();
+        }
+        batch.writeBytes(frame(record));
+    }
+
+    private void replay(byte[] record) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte op = in.readByte();
+        String key = in.readUTF();
+        remove(key);
+        if (op == PUT)
+        {
+            Tag tag = TagTypes.getType(in.readByte()).load(in, NbtAccounter.unlimitedHeap());
+            entries.put(key, new Entry(tag, recordSize(record.length)));
+            liveSize += recordSize(record.length);
+        }
+    }
+
+    private static byte[] record(byte op, String key, @Nullable Tag tag)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+            out.writeByte(op);
+            out.writeUTF(key);
+            if (tag != null)
+            {
+                out.writeByte(tag.getId());
+                tag.write(out);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] frame(byte[] record)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(recordSize(record.length));
+        buffer.putInt(record.length);
+        buffer.putLong(crc(record));
+        buffer.put(record);
+        return buffer.array();
+    }
+
+    private static int recordSize(int length)
+    {
+        return Integer.BYTES + Long.BYTES + length;
+    }
+
+    private static byte[] header()
+    {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).array();
+    }
+
+    private static long crc(byte[] bytes)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+}
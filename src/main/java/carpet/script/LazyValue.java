@@ -39,6 +39,53 @@ public interface LazyValue
     }
 
 
+    /**
+     * Lazy value of a variable that gets updated in place, like loop variables that change with each iteration
+     * without binding a new lazy value every time
+     */
+    interface Cursor extends LazyValue
+    {
+    }
+
+    /**
+     * @return lazy value that keeps returning what the given one returns now, even if it's a {@link Cursor}
+     * that will change later
+     */
+    static LazyValue snapshot(Context c, LazyValue lv)
+    {
+        if (lv instanceof Cursor)
+        {
+            Value value = lv.evalValue(c);
+            return (cc, tt) -> value;
+        }
+        return lv;
+    }
+
+    /**
+     * Loop variable holding the value for the current iteration
+     */
+    class Binding implements Cursor, ContextFreeLazyValue
+    {
+        private final String name;
+        private Value value = Value.NULL;
+
+        public Binding(String name)
+        {
+            this.name = name;
+        }
+
+        public void set(Value value)
+        {
+            this.value = value.bindable();
+        }
+
+        @Override
+        public Value evalType(Context.Type type)
+        {
+            return value.bindTo(name);
+        }
+    }
+
     class Constant implements ContextFreeLazyValue
     {
         Value result;
@@ -9,7 +9,6 @@ import java.util.Objects;
 
 import org.apache.commons.io.IOUtils;
 
-import carpet.script.argument.FileArgument;
 import net.minecraft.nbt.Tag;
 
 public record Module(String name, String code, boolean library)
@@ -90,14 +89,11 @@ public record Module(String name, String code, boolean library)
     public static Tag getData(Module module, ScriptServer scriptServer)
     {
         Path dataFile = resolveResource(module, scriptServer);
-        if (dataFile == null || !Files.exists(dataFile) || !(Files.isRegularFile(dataFile)))
+        if (dataFile == null)
         {
             return null;
         }
-        synchronized (FileArgument.writeIOSync)
-        {
-            return FileArgument.readTag(dataFile);
-        }
+        return DataFileWriter.read(dataFile);
     }
 
     public static void saveData(Module module, Tag globalState, ScriptServer scriptServer)
@@ -118,10 +114,7 @@ public record Module(String name, String code, boolean library)
                 throw new IllegalStateException(e);
             }
         }
-        synchronized (FileArgument.writeIOSync)
-        {
-            FileArgument.writeTagDisk(globalState, dataFile, false);
-        }
+        DataFileWriter.write(dataFile, globalState);
     }
 
     private static Path resolveResource(Module module, ScriptServer scriptServer)
@@ -0,0 +1,189 @@
+package carpet.script;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Disk cache of tokenized app code, so loading and reloading apps that didn't change skips the tokenizer.
+ * Entries are keyed by a hash of the code, tokenizer options and the carpet version, so changing any of them
+ * makes the loader tokenize the code again. Parse trees are not cached, since they hold functions bound to the
+ * expression they were built for.
+ */
+public class ModuleCache
+{
+    private static final int MAGIC = 0x53435443;
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_ENTRIES = 256;
+    private static final Token.TokenType[] TOKEN_TYPES = Token.TokenType.values();
+
+    private final Path folder;
+    private final String version;
+
+    public ModuleCache(Path folder, String version)
+    {
+        this.folder = folder;
+        this.version = version;
+        prune();
+    }
+
+    /**
+     * @return tokens stored for that code, or null if there are none
+     */
+    @Nullable
+    public List<Token> load(String code, boolean comments, boolean newLineMarkers)
+    {
+        Path file = entry(code, comments, newLineMarkers);
+        if (file == null || !Files.exists(file))
+        {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !in.readUTF().equals(version))
+            {
+                return null;
+            }
+            int size = in.readInt();
+            List<Token> tokens = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+            {
+                Token token = new Token();
+                token.type = TOKEN_TYPES[in.readByte()];
+                token.surface = in.readUTF();
+                token.display = in.readUTF();
+                token.comment = in.readUTF();
+                token.pos = in.readInt();
+                token.ordinal = in.readInt();
+                token.linepos = in.readInt();
+                token.lineno = in.readInt();
+                tokens.add(token);
+            }
+            // keeps entries that are in use from being pruned
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return tokens;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            CarpetScriptServer.LOG.debug("Ignoring broken app cache entry {}", file, e);
+            return null;
+        }
+    }
+
+    public void store(String code, boolean comments, boolean newLineMarkers, List<Token> tokens)
+    {
+        Path file = entry(code, comments, newLineMarkers);
+        if (file == null)
+        {
+            return;
+        }
+        Path temp = null;
+        try
+        {
+            Files.createDirectories(folder);
+            temp = Files.createTempFile(folder, "tokens", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(version);
+                out.writeInt(tokens.size());
+                for (Token token : tokens)
+                {
+                    out.writeByte(token.type.ordinal());
+                    out.writeUTF(token.surface);
+                    out.writeUTF(token.display);
+                    out.writeUTF(token.comment);
+                    out.writeInt(token.pos);
+                    out.writeInt(token.ordinal);
+                    out.writeInt(token.linepos);
+                    out.writeInt(token.lineno);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // caching is optional, app loads fine without it, for instance with string literals too long to store
+            CarpetScriptServer.LOG.debug("Failed to cache tokens of an app", e);
+            if (temp != null)
+            {
+                try
+                {
+                    Files.deleteIfExists(temp);
+                }
+                catch (IOException ignored)
+                {
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private Path entry(String code, boolean comments, boolean newLineMarkers)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(version.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ((comments ? 1 : 0) | (newLineMarkers ? 2 : 0)));
+            digest.update(code.getBytes(StandardCharsets.UTF_8));
+            return folder.resolve(HexFormat.of().formatHex(digest.digest()) + ".tokens");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Removes the oldest entries, so the cache doesn't grow with each edit of an app
+     */
+    private void prune()
+    {
+        if (!Files.isDirectory(folder))
+        {
+            return;
+        }
+        try (Stream<Path> files = Files.list(folder))
+        {
+            List<Path> entries = files.sorted(Comparator.comparingLong(ModuleCache::lastModified).reversed()).toList();
+            for (int i = MAX_ENTRIES; i < entries.size(); i++)
+            {
+                Files.deleteIfExists(entries.get(i));
+            }
+        }
+        catch (IOException e)
+        {
+            CarpetScriptServer.LOG.debug("Failed to clean up app cache", e);
+        }
+    }
+
+    private static long lastModified(Path file)
+    {
+        try
+        {
+            return Files.getLastModifiedTime(file).toMillis();
+        }
+        catch (IOException e)
+        {
+            return 0L;
+        }
+    }
+}
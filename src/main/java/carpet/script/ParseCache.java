@@ -0,0 +1,166 @@
+package carpet.script;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Bounded cache of game objects parsed from strings, like blocks, items, nbt paths or entity selectors, shared by all apps.
+ * Entries are split between segments by the hash of the key, each with its own lock and its own least recently used order,
+ * so tasks running on other threads rarely wait for each other. All caches are cleared when game registries or datapacks
+ * may have changed, since parsed objects hold references to registry entries.
+ */
+public class ParseCache<V>
+{
+    private static final int SEGMENTS = 16;
+    private static final List<ParseCache<?>> ALL = new CopyOnWriteArrayList<>();
+
+    public final String name;
+    public final int maxSize;
+    private final Segment<V>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static class Segment<T> extends LinkedHashMap<String, T>
+    {
+        private final int capacity;
+        private final LongAdder evictions;
+
+        private Segment(int capacity, LongAdder evictions)
+        {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, T> eldest)
+        {
+            if (size() > capacity)
+            {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ParseCache(String name, int maxSize)
+    {
+        this.name = name;
+        this.maxSize = maxSize;
+        int perSegment = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++)
+        {
+            segments[i] = new Segment<>(perSegment, evictions);
+        }
+    }
+
+    /**
+     * Creates a cache and registers it, so it gets cleared on reloads and shows up in stats
+     */
+    public static <V> ParseCache<V> create(String name, int maxSize)
+    {
+        ParseCache<V> cache = new ParseCache<>(name, maxSize);
+        ALL.add(cache);
+        return cache;
+    }
+
+    public static List<ParseCache<?>> all()
+    {
+        return new ArrayList<>(ALL);
+    }
+
+    /**
+     * Clears all caches, once the parsed objects may refer to outdated registry entries
+     */
+    public static void invalidateAll()
+    {
+        ALL.forEach(ParseCache::clear);
+    }
+
+    /**
+     * @return cached value for the key, or result of the parser, which gets cached. Parsing happens outside of locks,
+     * so the same key may get parsed by two threads at once. Parser can throw or return null to signal incorrect input,
+     * null results are not cached.
+     */
+    @Nullable
+    public V get(String key, Function<String, @Nullable V> parser)
+    {
+        Segment<V> segment = segmentFor(key);
+        V value;
+        synchronized (segment)
+        {
+            value = segment.get(key);
+        }
+        if (value != null)
+        {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = parser.apply(key);
+        if (value != null)
+        {
+            synchronized (segment)
+            {
+                segment.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public void clear()
+    {
+        for (Segment<V> segment : segments)
+        {
+            synchronized (segment)
+            {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for (Segment<V> segment : segments)
+        {
+            synchronized (segment)
+            {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long hitCount()
+    {
+        return hits.sum();
+    }
+
+    public long missCount()
+    {
+        return misses.sum();
+    }
+
+    public long evictionCount()
+    {
+        return evictions.sum();
+    }
+
+    private Segment<V> segmentFor(String key)
+    {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+}
@@ -0,0 +1,183 @@
+package carpet.script;
+
+import carpet.script.CarpetEventServer.ScheduledCall;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hierarchical timing wheel holding calls scheduled with {@code schedule}, keyed on the number of ticks the scheduler ran.
+ * Level {@code l} of the wheel has 256 slots, each covering 256^l ticks. Calls go to the level matching how far in the
+ * future they are due, and slots of higher levels are spread into lower levels when the wheel gets to them, so a tick
+ * only touches calls that are due in that tick, or calls that get closer to their due time by a factor of 256.
+ */
+public class ScheduledCallWheel
+{
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = Long.SIZE / SLOT_BITS;
+
+    private static class Bucket extends LinkedHashSet<ScheduledCall>
+    {
+    }
+
+    private final Bucket[][] wheel = new Bucket[LEVELS][SLOTS];
+    private final Long2ObjectOpenHashMap<ScheduledCall> handles = new Long2ObjectOpenHashMap<>();
+    private final Map<String, Set<ScheduledCall>> byHost = new HashMap<>();
+    private long currentTick = 0L;
+    private long nextHandle = 1L;
+
+    /**
+     * Adds the call to the wheel, to run after the call delay. Calls with delay lower than 1 run on the next tick.
+     *
+     * @return handle of the call that can be used to cancel it
+     */
+    public synchronized long schedule(ScheduledCall call, long delay)
+    {
+        call.id = nextHandle++;
+        call.dueTime = delay >= Long.MAX_VALUE - currentTick ? Long.MAX_VALUE : currentTick + Math.max(delay, 1L);
+        handles.put(call.id, call);
+        if (call.host != null)
+        {
+            byHost.computeIfAbsent(call.host, h -> new LinkedHashSet<>()).add(call);
+        }
+        insert(call);
+        return call.id;
+    }
+
+    /**
+     * @return call that was cancelled, or null if there was no pending call with this handle
+     */
+    @Nullable
+    public synchronized ScheduledCall cancel(long handle)
+    {
+        ScheduledCall call = handles.get(handle);
+        if (call != null)
+        {
+            remove(call);
+        }
+        return call;
+    }
+
+    @Nullable
+    public synchronized ScheduledCall get(long handle)
+    {
+        return handles.get(handle);
+    }
+
+    public synchronized void removeHost(String host)
+    {
+        Set<ScheduledCall> calls = byHost.remove(host);
+        if (calls != null)
+        {
+            for (ScheduledCall call : calls)
+            {
+                handles.remove(call.id);
+                call.bucket.remove(call);
+                call.bucket = null;
+            }
+        }
+    }
+
+    public synchronized int size()
+    {
+        return handles.size();
+    }
+
+    /**
+     * Moves the wheel by one tick
+     *
+     * @return calls due in that tick, in order they were scheduled
+     */
+    public synchronized List<ScheduledCall> advance()
+    {
+        currentTick++;
+        for (int level = LEVELS - 1; level > 0; level--)
+        {
+            if ((currentTick & ((1L << (level * SLOT_BITS)) - 1)) == 0)
+            {
+                Bucket bucket = take(level, slot(currentTick, level));
+                if (bucket != null)
+                {
+                    bucket.forEach(this::insert);
+                }
+            }
+        }
+        Bucket due = take(0, slot(currentTick, 0));
+        if (due == null)
+        {
+            return Collections.emptyList();
+        }
+        List<ScheduledCall> calls = new ArrayList<>(due);
+        // calls spread from higher levels land after ones scheduled directly into that slot
+        calls.sort(Comparator.comparingLong(c -> c.id));
+        for (ScheduledCall call : calls)
+        {
+            call.bucket = null;
+            forget(call);
+        }
+        return calls;
+    }
+
+    private void insert(ScheduledCall call)
+    {
+        long delta = call.dueTime - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << ((level + 1) * SLOT_BITS))
+        {
+            level++;
+        }
+        int slot = slot(call.dueTime, level);
+        Bucket bucket = wheel[level][slot];
+        if (bucket == null)
+        {
+            bucket = wheel[level][slot] = new Bucket();
+        }
+        bucket.add(call);
+        call.bucket = bucket;
+    }
+
+    private void remove(ScheduledCall call)
+    {
+        call.bucket.remove(call);
+        call.bucket = null;
+        forget(call);
+    }
+
+    private void forget(ScheduledCall call)
+    {
+        handles.remove(call.id);
+        if (call.host != null)
+        {
+            Set<ScheduledCall> hostCalls = byHost.get(call.host);
+            hostCalls.remove(call);
+            if (hostCalls.isEmpty())
+            {
+                byHost.remove(call.host);
+            }
+        }
+    }
+
+    @Nullable
+    private Bucket take(int level, int slot)
+    {
+        Bucket bucket = wheel[level][slot];
+        wheel[level][slot] = null;
+        return bucket;
+    }
+
+    private static int slot(long tick, int level)
+    {
+        return (int) ((tick >>> (level * SLOT_BITS)) & SLOT_MASK);
+    }
+}
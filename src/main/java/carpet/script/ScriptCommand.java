@@ -156,6 +156,8 @@ public class ScriptCommand
         LiteralArgumentBuilder<CommandSourceStack> b = literal("globals").
                 executes(context -> listGlobals(context, false)).
                 then(literal("all").executes(context -> listGlobals(context, true)));
+        LiteralArgumentBuilder<CommandSourceStack> v = literal("stats").
+                executes(ScriptCommand::showStats);
         LiteralArgumentBuilder<CommandSourceStack> o = literal("stop").
                 executes((cc) -> {
                     ss(cc).stopAll = true;
@@ -389,13 +391,13 @@ public class ScriptCommand
 
         dispatcher.register(literal("script").
                 requires(Vanilla::ServerPlayer_canScriptGeneral).
-                then(b).then(u).then(o).then(l).then(s).then(c).then(h).then(i).then(e).then(t).then(a).then(f).then(q).then(d).then(r));
+                then(b).then(v).then(u).then(o).then(l).then(s).then(c).then(h).then(i).then(e).then(t).then(a).then(f).then(q).then(d).then(r));
         dispatcher.register(literal("script").
                 requires(Vanilla::ServerPlayer_canScriptGeneral).
                 then(literal("in").
                         then(argument("app", StringArgumentType.word()).
                                 suggests((cc, bb) -> suggest(ss(cc).modules.keySet(), bb)).
-                                then(b).then(u).then(o).then(l).then(s).then(c).then(h).then(i).then(e).then(t))));
+                                then(b).then(v).then(u).then(o).then(l).then(s).then(c).then(h).then(i).then(e).then(t))));
     }
 
     private static CarpetScriptHost getHost(CommandContext<CommandSourceStack> context) throws CommandSyntaxException
@@ -485,6 +487,52 @@ public class ScriptCommand
         return 1;
     }
 
+    private static int showStats(CommandContext<CommandSourceStack> context) throws CommandSyntaxException
+    {
+        CarpetScriptHost host = getHost(context);
+        CommandSourceStack source = context.getSource();
+        CarpetScriptServer scriptServer = ss(context);
+
+        Carpet.Messenger_message(source, "lb Execution stats" + ((host == scriptServer.globalHost) ? ":" : " for " + host.getVisualName() + ":"));
+        long compiled = 0;
+        long interpreted = 0;
+        for (String name : host.globalFunctionNames(host.main, s -> true).toList())
+        {
+            FunctionValue fun = host.getFunction(name);
+            if (fun == null)
+            {
+                continue;
+            }
+            if (fun.isCompiled())
+            {
+                compiled++;
+            }
+            else
+            {
+                interpreted++;
+            }
+        }
+        Carpet.Messenger_message(source, "w  - functions: ", "wb " + compiled, "w  compiled, ", "wb " + interpreted, "w  interpreted"
+                + (host.compileFunctions ? "" : " (compilation disabled)"));
+        Carpet.Messenger_message(source, "gi  - all apps: " + ScriptCompiler.compiledCount() + " compiled, " + ScriptCompiler.failedCount() + " failed to compile");
+        EventBudget.AppStats eventStats = host.getName() == null ? null : scriptServer.events.budget.getStats(host.getName());
+        if (eventStats != null)
+        {
+            Carpet.Messenger_message(source, "w  - events over time budget: ", "wb " + eventStats.overruns, "w , deferred calls: ", "wb " + eventStats.deferred,
+                    "w , dropped: ", "wb " + eventStats.dropped, "w , waiting: ", "wb " + eventStats.waiting);
+        }
+        TaskMailbox mailbox = scriptServer.taskMailbox;
+        Carpet.Messenger_message(source, "w  - docked tasks: ", "wb " + mailbox.dockedCount(), "w  in ", "wb " + mailbox.batchCount(), "w  batches, ",
+                "wb " + mailbox.size(), "w  waiting");
+        Carpet.Messenger_message(source, "gi  - docked task batches over time budget: " + mailbox.overBudgetCount() + ", tasks waiting for a full queue: " + mailbox.producerWaitCount());
+        for (ParseCache<?> cache : ParseCache.all())
+        {
+            Carpet.Messenger_message(source, "w  - cached " + cache.name + ": ", "wb " + cache.size(), "w /" + cache.maxSize + ", hits: ", "wb " + cache.hitCount(),
+                    "w , misses: ", "wb " + cache.missCount(), "w , evictions: ", "wb " + cache.evictionCount());
+        }
+        return 1;
+    }
+
     public static int handleCall(CommandSourceStack source, CarpetScriptHost host, Supplier<Value> call)
     {
         try
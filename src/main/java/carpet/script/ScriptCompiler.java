@@ -0,0 +1,482 @@
+package carpet.script;
+
+import carpet.script.Expression.ExpressionNode;
+import carpet.script.Fluff.AbstractFunction;
+import carpet.script.Fluff.AbstractOperator;
+import carpet.script.Fluff.AbstractUnaryOperator;
+import carpet.script.Fluff.ILazyFunction;
+import carpet.script.Fluff.ILazyOperator;
+import carpet.script.exception.InternalExpressionException;
+import carpet.script.value.FunctionUnpackedArgumentsValue;
+import carpet.script.value.FunctionValue;
+import carpet.script.value.ListValue;
+import carpet.script.value.Value;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.classfile.Opcode;
+import java.lang.classfile.TypeKind;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.DynamicConstantDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Optional second execution tier for user defined functions. Bodies of functions that are called often get
+ * translated into a hidden class with one method, where operators and built-in functions evaluating their
+ * arguments eagerly, as well as code blocks and {@code if} statements, are called directly from generated code.
+ * Each compiled function gets its own call sites, and all the operators and nodes it uses are class constants,
+ * so the JIT can inline across operators instead of going through the megamorphic tree of {@link LazyValue} lambdas.
+ * Arithmetic and comparison operators get typed versions that work on primitives when both operands are numbers.
+ * Anything else, like variables, assignments, loops or lazy functions, is evaluated with the same code the
+ * tree-walking interpreter would use.
+ */
+public class ScriptCompiler
+{
+    /**
+     * Number of calls after which a function gets compiled
+     */
+    public static final int INVOCATION_THRESHOLD = 200;
+
+    private static final AtomicLong compiledFunctions = new AtomicLong();
+    private static final AtomicLong failedCompilations = new AtomicLong();
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final ClassDesc CD_COMPILED = ClassDesc.of("carpet.script.CompiledFunction");
+    private static final ClassDesc CD_LAZY_VALUE = ClassDesc.of("carpet.script.LazyValue");
+    private static final ClassDesc CD_CONTEXT = ClassDesc.of("carpet.script.Context");
+    private static final ClassDesc CD_TYPE = ClassDesc.of("carpet.script.Context$Type");
+    private static final ClassDesc CD_EXPRESSION = ClassDesc.of("carpet.script.Expression");
+    private static final ClassDesc CD_TOKEN = ClassDesc.of("carpet.script.Token");
+    private static final ClassDesc CD_COMPILER = ClassDesc.of("carpet.script.ScriptCompiler");
+    private static final ClassDesc CD_ILAZY_FUNCTION = ClassDesc.of("carpet.script.Fluff$ILazyFunction");
+    private static final ClassDesc CD_IOPERATOR = ClassDesc.of("carpet.script.Fluff$IOperator");
+    private static final ClassDesc CD_UNARY_OPERATOR = ClassDesc.of("carpet.script.Fluff$AbstractUnaryOperator");
+    private static final ClassDesc CD_ABSTRACT_FUNCTION = ClassDesc.of("carpet.script.Fluff$AbstractFunction");
+    private static final ClassDesc CD_VALUE = ClassDesc.of("carpet.script.value.Value");
+    private static final ClassDesc CD_NULL_VALUE = ClassDesc.of("carpet.script.value.NullValue");
+    private static final ClassDesc CD_NUMERIC_VALUE = ClassDesc.of("carpet.script.value.NumericValue");
+    private static final ClassDesc CD_RUNTIME_EXCEPTION = ClassDesc.of("java.lang.RuntimeException");
+
+    private static final MethodTypeDesc MTD_EVAL_VALUE = MethodTypeDesc.of(CD_VALUE, CD_CONTEXT, CD_TYPE);
+    private static final MethodTypeDesc MTD_BINARY = MethodTypeDesc.of(CD_VALUE, CD_VALUE, CD_VALUE);
+    private static final MethodTypeDesc MTD_UNARY = MethodTypeDesc.of(CD_VALUE, CD_VALUE);
+    private static final MethodTypeDesc MTD_NUMERIC = MethodTypeDesc.of(CD_NUMERIC_VALUE, CD_NUMERIC_VALUE, CD_NUMERIC_VALUE);
+    private static final MethodTypeDesc MTD_COMPARE = MethodTypeDesc.of(ConstantDescs.CD_int, CD_VALUE);
+    private static final MethodTypeDesc MTD_CALL_FUNCTION = MethodTypeDesc.of(CD_VALUE, CD_ABSTRACT_FUNCTION, CD_VALUE.arrayType());
+    private static final MethodTypeDesc MTD_HANDLE_EXCEPTION = MethodTypeDesc.of(CD_RUNTIME_EXCEPTION, CD_CONTEXT, CD_RUNTIME_EXCEPTION, CD_EXPRESSION, CD_TOKEN);
+
+    private static final int CONTEXT_SLOT = 1;
+    private static final int TYPE_SLOT = 2;
+
+    /**
+     * Operators with a typed version for numbers, mapped to the primitive helpers in {@link carpet.script.value.NumericValue}
+     */
+    private static final Map<String, String> ARITHMETIC = Map.of("+", "sum", "-", "difference", "*", "product");
+    /**
+     * Comparison operators, mapped to the branch taken on the result of {@link Value#compareTo} when the comparison holds
+     */
+    private static final Map<String, Opcode> COMPARISONS = Map.of("<", Opcode.IFLT, "<=", Opcode.IFLE, ">", Opcode.IFGT, ">=", Opcode.IFGE);
+
+    private enum Kind
+    {
+        INTERPRETED, BINARY_OPERATOR, ARITHMETIC, COMPARISON, UNARY_OPERATOR, FUNCTION, SEQUENCE, CONDITION
+    }
+
+    private final Expression expression;
+    private final List<Object> constants = new ArrayList<>();
+
+    private ScriptCompiler(Expression expression)
+    {
+        this.expression = expression;
+    }
+
+    public static long compiledCount()
+    {
+        return compiledFunctions.get();
+    }
+
+    public static long failedCount()
+    {
+        return failedCompilations.get();
+    }
+
+    /**
+     * @return compiled body of the function, or null if the function cannot be compiled or there is nothing to gain
+     */
+    @Nullable
+    public static LazyValue compile(FunctionValue function)
+    {
+        ExpressionNode definition = function.getToken().node;
+        if (definition == null || definition.args.size() != 2 || definition.frame != function.getFrameLayout())
+        {
+            return null;
+        }
+        ScriptCompiler compiler = new ScriptCompiler(function.getExpression());
+        ExpressionNode body = definition.args.get(1);
+        if (compiler.classify(body) == Kind.INTERPRETED)
+        {
+            return null;
+        }
+        try
+        {
+            LazyValue compiled = compiler.define(body);
+            compiledFunctions.incrementAndGet();
+            return compiled;
+        }
+        catch (Throwable exc)
+        {
+            failedCompilations.incrementAndGet();
+            CarpetScriptServer.LOG.debug("Failed to compile function " + function.fullName() + ", keeping it interpreted", exc);
+            return null;
+        }
+    }
+
+    /**
+     * Called from generated code to evaluate built-in functions, mirroring {@link Fluff.AbstractLazyFunction#unpackArgs}
+     */
+    public static Value callFunction(AbstractFunction function, Value[] args)
+    {
+        List<Value> params = new ArrayList<>(args.length);
+        for (Value arg : args)
+        {
+            if (arg instanceof FunctionUnpackedArgumentsValue)
+            {
+                params.addAll(((ListValue) arg).getItems());
+            }
+            else
+            {
+                params.add(arg);
+            }
+        }
+        if (!function.numParamsVaries() && function.getNumParams() != params.size())
+        {
+            throw new InternalExpressionException("Function " + function.getName() + " expected " + function.getNumParams() + " parameters, got " + params.size());
+        }
+        return function.eval(params);
+    }
+
+    private LazyValue define(ExpressionNode body) throws Throwable
+    {
+        byte[] bytes = ClassFile.of().build(CD_COMPILED, cb -> {
+            cb.withFlags(ClassFile.ACC_PUBLIC | ClassFile.ACC_FINAL);
+            cb.withSuperclass(ConstantDescs.CD_Object);
+            cb.withInterfaceSymbols(CD_LAZY_VALUE);
+            cb.withMethodBody(ConstantDescs.INIT_NAME, ConstantDescs.MTD_void, ClassFile.ACC_PUBLIC, code -> code
+                    .aload(0)
+                    .invokespecial(ConstantDescs.CD_Object, ConstantDescs.INIT_NAME, ConstantDescs.MTD_void)
+                    .return_());
+            cb.withMethodBody("evalValue", MTD_EVAL_VALUE, ClassFile.ACC_PUBLIC, code -> {
+                int result = emit(code, body, null);
+                code.aload(result).areturn();
+            });
+        });
+        MethodHandles.Lookup lookup = LOOKUP.defineHiddenClassWithClassData(bytes, List.copyOf(constants), true);
+        return (LazyValue) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+    }
+
+    private Kind classify(ExpressionNode node)
+    {
+        if (node.op instanceof LazyValue.ContextFreeLazyValue)
+        {
+            return Kind.INTERPRETED;
+        }
+        Token token = node.token;
+        switch (token.type)
+        {
+            case OPERATOR ->
+            {
+                if (token.surface.equals(";") && node.args.size() == 2)
+                {
+                    return Kind.SEQUENCE;
+                }
+                ILazyOperator op = expression.getOperator(token.surface);
+                if (op instanceof AbstractOperator && !(op instanceof AbstractUnaryOperator) && node.args.size() == 2
+                        && inheritsLazyEval(op, AbstractOperator.class, Context.class, Context.Type.class, Expression.class, Token.class, LazyValue.class, LazyValue.class))
+                {
+                    if (ARITHMETIC.containsKey(token.surface))
+                    {
+                        return Kind.ARITHMETIC;
+                    }
+                    return COMPARISONS.containsKey(token.surface) ? Kind.COMPARISON : Kind.BINARY_OPERATOR;
+                }
+            }
+            case UNARY_OPERATOR ->
+            {
+                ILazyOperator op = expression.getOperator(token.surface);
+                if (op instanceof AbstractUnaryOperator && node.args.size() == 1
+                        && inheritsLazyEval(op, AbstractUnaryOperator.class, Context.class, Context.Type.class, Expression.class, Token.class, LazyValue.class, LazyValue.class))
+                {
+                    return Kind.UNARY_OPERATOR;
+                }
+            }
+            case FUNCTION ->
+            {
+                if (token.surface.equals("then") && !node.args.isEmpty())
+                {
+                    return Kind.SEQUENCE;
+                }
+                if (token.surface.equals("if") && node.args.size() >= 2)
+                {
+                    return Kind.CONDITION;
+                }
+                ILazyFunction f = expression.getFunction(token.surface);
+                if (f instanceof AbstractFunction
+                        && inheritsLazyEval(f, AbstractFunction.class, Context.class, Context.Type.class, Expression.class, Token.class, List.class))
+                {
+                    return Kind.FUNCTION;
+                }
+            }
+            default ->
+            {
+            }
+        }
+        return Kind.INTERPRETED;
+    }
+
+    private static boolean inheritsLazyEval(Object op, Class<?> base, Class<?>... params)
+    {
+        try
+        {
+            return op.getClass().getMethod("lazyEval", params).getDeclaringClass() == base;
+        }
+        catch (NoSuchMethodException ignored)
+        {
+            return false;
+        }
+    }
+
+    private DynamicConstantDesc<?> constant(Object value, ClassDesc type)
+    {
+        constants.add(value);
+        return DynamicConstantDesc.ofNamed(ConstantDescs.BSM_CLASS_DATA_AT, ConstantDescs.DEFAULT_NAME, type, constants.size() - 1);
+    }
+
+    private static void loadType(CodeBuilder code, Context.@Nullable Type type)
+    {
+        if (type == null)
+        {
+            code.aload(TYPE_SLOT);
+        }
+        else
+        {
+            code.getstatic(CD_TYPE, type.name(), CD_TYPE);
+        }
+    }
+
+    /**
+     * Emits code evaluating the node and storing the result in a new local variable
+     *
+     * @param type type requested by the parent, or null to use the type the compiled function was called with
+     * @return slot of the local variable with the result
+     */
+    private int emit(CodeBuilder code, ExpressionNode node, Context.@Nullable Type type)
+    {
+        int result = code.allocateLocal(TypeKind.REFERENCE);
+        Kind kind = classify(node);
+        if (kind == Kind.INTERPRETED)
+        {
+            code.ldc(constant(node.op, CD_LAZY_VALUE))
+                    .aload(CONTEXT_SLOT);
+            loadType(code, type);
+            code.invokeinterface(CD_LAZY_VALUE, "evalValue", MTD_EVAL_VALUE)
+                    .astore(result);
+            return result;
+        }
+        if (kind == Kind.FUNCTION || kind == Kind.SEQUENCE || kind == Kind.CONDITION)
+        {
+            code.invokestatic(CD_ILAZY_FUNCTION, "checkInterrupts", ConstantDescs.MTD_void, true);
+        }
+        // same as in the interpreter, errors are reported at the innermost operator or function they passed through
+        code.trying(block -> {
+            switch (kind)
+            {
+                case BINARY_OPERATOR ->
+                {
+                    int left = emit(block, node.args.get(0), Context.NONE);
+                    int right = emit(block, node.args.get(1), Context.NONE);
+                    block.ldc(constant(expression.getOperator(node.token.surface), CD_IOPERATOR))
+                            .aload(left)
+                            .aload(right)
+                            .invokeinterface(CD_IOPERATOR, "eval", MTD_BINARY)
+                            .astore(result);
+                }
+                case ARITHMETIC ->
+                {
+                    // numbers are added in place on primitives, anything else goes through the operator
+                    int left = emit(block, node.args.get(0), Context.NONE);
+                    int right = emit(block, node.args.get(1), Context.NONE);
+                    Label generic = block.newLabel();
+                    Label end = block.newLabel();
+                    block.aload(left)
+                            .instanceOf(CD_NUMERIC_VALUE)
+                            .ifeq(generic)
+                            .aload(right)
+                            .instanceOf(CD_NUMERIC_VALUE)
+                            .ifeq(generic)
+                            .aload(left)
+                            .checkcast(CD_NUMERIC_VALUE)
+                            .aload(right)
+                            .checkcast(CD_NUMERIC_VALUE)
+                            .invokestatic(CD_NUMERIC_VALUE, ARITHMETIC.get(node.token.surface), MTD_NUMERIC)
+                            .astore(result)
+                            .goto_(end)
+                            .labelBinding(generic)
+                            .ldc(constant(expression.getOperator(node.token.surface), CD_IOPERATOR))
+                            .aload(left)
+                            .aload(right)
+                            .invokeinterface(CD_IOPERATOR, "eval", MTD_BINARY)
+                            .astore(result)
+                            .labelBinding(end);
+                }
+                case COMPARISON ->
+                {
+                    // same as the operator, without going through the lambda and boxing the comparison result
+                    int left = emit(block, node.args.get(0), Context.NONE);
+                    int right = emit(block, node.args.get(1), Context.NONE);
+                    Label holds = block.newLabel();
+                    Label end = block.newLabel();
+                    block.aload(left)
+                            .aload(right)
+                            .invokevirtual(CD_VALUE, "compareTo", MTD_COMPARE)
+                            .branch(COMPARISONS.get(node.token.surface), holds)
+                            .getstatic(CD_VALUE, "FALSE", CD_NUMERIC_VALUE)
+                            .astore(result)
+                            .goto_(end)
+                            .labelBinding(holds)
+                            .getstatic(CD_VALUE, "TRUE", CD_NUMERIC_VALUE)
+                            .astore(result)
+                            .labelBinding(end);
+                }
+                case UNARY_OPERATOR ->
+                {
+                    int arg = emit(block, node.args.get(0), Context.NONE);
+                    block.ldc(constant(expression.getOperator(node.token.surface), CD_UNARY_OPERATOR))
+                            .aload(arg)
+                            .invokevirtual(CD_UNARY_OPERATOR, "evalUnary", MTD_UNARY)
+                            .astore(result);
+                }
+                case FUNCTION ->
+                {
+                    int[] args = new int[node.args.size()];
+                    for (int i = 0; i < args.length; i++)
+                    {
+                        args[i] = emit(block, node.args.get(i), Context.NONE);
+                    }
+                    block.ldc(constant(expression.getFunction(node.token.surface), CD_ABSTRACT_FUNCTION))
+                            .loadConstant(args.length)
+                            .anewarray(CD_VALUE);
+                    for (int i = 0; i < args.length; i++)
+                    {
+                        block.dup()
+                                .loadConstant(i)
+                                .aload(args[i])
+                                .aastore();
+                    }
+                    block.invokestatic(CD_COMPILER, "callFunction", MTD_CALL_FUNCTION)
+                            .astore(result);
+                }
+                case SEQUENCE ->
+                {
+                    int last = node.args.size() - 1;
+                    for (int i = 0; i < last; i++)
+                    {
+                        emit(block, node.args.get(i), Context.VOID);
+                    }
+                    block.aload(emit(block, node.args.get(last), type))
+                            .astore(result);
+                }
+                case CONDITION ->
+                {
+                    Label end = block.newLabel();
+                    int size = node.args.size();
+                    for (int i = 0; i < size - 1; i += 2)
+                    {
+                        Label next = block.newLabel();
+                        block.aload(emit(block, node.args.get(i), Context.BOOLEAN))
+                                .invokevirtual(CD_VALUE, "getBoolean", MethodTypeDesc.of(ConstantDescs.CD_boolean))
+                                .ifeq(next)
+                                .aload(emit(block, node.args.get(i + 1), type))
+                                .astore(result)
+                                .goto_(end)
+                                .labelBinding(next);
+                    }
+                    if (size % 2 == 1)
+                    {
+                        block.aload(emit(block, node.args.get(size - 1), type));
+                    }
+                    else
+                    {
+                        block.getstatic(CD_VALUE, "NULL", CD_NULL_VALUE);
+                    }
+                    block.astore(result)
+                            .labelBinding(end);
+                }
+                default -> throw new IllegalStateException("Unexpected node kind " + kind);
+            }
+        }, catches -> catches.catching(CD_RUNTIME_EXCEPTION, handler -> handler
+                .aload(CONTEXT_SLOT)
+                .swap()
+                .ldc(constant(expression, CD_EXPRESSION))
+                .ldc(constant(node.token, CD_TOKEN))
+                .invokestatic(CD_EXPRESSION, "handleCodeException", MTD_HANDLE_EXCEPTION)
+                .athrow()));
+        return result;
+    }
+
+    /**
+     * Holds the code of a user defined function, shared between all copies of the function value, and switches
+     * it to the compiled version once the function was called enough times
+     */
+    public static class FunctionBody
+    {
+        private final LazyValue interpreted;
+        private volatile LazyValue current;
+        private volatile boolean settled = false;
+        private int invocations = 0;
+
+        public FunctionBody(LazyValue interpreted)
+        {
+            this.interpreted = interpreted;
+            this.current = interpreted;
+        }
+
+        public LazyValue get(FunctionValue function, Context c)
+        {
+            if (!settled && c.host.compileFunctions && ++invocations >= INVOCATION_THRESHOLD)
+            {
+                compile(function);
+            }
+            return current;
+        }
+
+        private synchronized void compile(FunctionValue function)
+        {
+            if (settled)
+            {
+                return;
+            }
+            LazyValue compiled = ScriptCompiler.compile(function);
+            if (compiled != null)
+            {
+                current = compiled;
+            }
+            settled = true;
+        }
+
+        public boolean isCompiled()
+        {
+            return current != interpreted;
+        }
+    }
+}
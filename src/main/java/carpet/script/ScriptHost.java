@@ -22,7 +22,6 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
@@ -32,11 +31,12 @@ public abstract class ScriptHost
     private static final Map<Long, Random> randomizers = new Long2ObjectOpenHashMap<>();
 
     public static Thread mainThread = null;
-    private final Map<Value, ThreadPoolExecutor> executorServices = new HashMap<>();
+    private final Map<Value, TaskPool> executorServices = new ConcurrentHashMap<>();
     private final Map<Value, Object> locks = new ConcurrentHashMap<>();
     private final ScriptServer scriptServer;
     protected boolean inTermination = false;
     public boolean strict;
+    public boolean compileFunctions;
     public Expression.LoadOverride loadOverrides;
     public Expression.@Nullable ExpressionNode root;
 
@@ -152,6 +152,7 @@ public abstract class ScriptHost
         this.perUser = perUser;
         this.user = null;
         this.strict = false;
+        this.compileFunctions = false;
         this.loadOverrides = loadOverrides;
         this.scriptServer = scriptServer;
         ModuleData moduleData = new ModuleData(code);
@@ -230,6 +231,22 @@ public abstract class ScriptHost
         ).distinct().sorted();
     }
 
+    /**
+     * @return modules loaded so far by the host and its user hosts, including its main module
+     */
+    public Set<Module> loadedModules()
+    {
+        Set<Module> loaded = new HashSet<>();
+        modules.values().forEach(m -> {
+            if (m != null)
+            {
+                loaded.add(m);
+            }
+        });
+        userHosts.values().forEach(child -> loaded.addAll(child.loadedModules()));
+        return loaded;
+    }
+
     protected abstract Module getModuleOrLibraryByName(String name); // this should be shell out in the executor
 
     protected abstract void runModuleCode(Context c, Module module); // this should be shell out in the executor
@@ -481,29 +498,65 @@ public abstract class ScriptHost
         return locks.computeIfAbsent(name, n -> new Object());
     }
 
-    public ThreadPoolExecutor getExecutor(Value pool)
+    @Nullable
+    public TaskPool getExecutor(Value pool)
     {
         if (inTermination)
         {
             return null;
         }
-        return executorServices.computeIfAbsent(pool, v -> (ThreadPoolExecutor) Executors.newCachedThreadPool());
+        return executorServices.computeIfAbsent(pool, v -> TaskPool.createDefault());
+    }
+
+    /**
+     * Sets up the executor with its own kind and limits. Executors that already run tasks can't be changed.
+     */
+    public void configureExecutor(Value pool, TaskPool.Kind kind, int threads, int queueLimit)
+    {
+        if (inTermination)
+        {
+            throw new InternalExpressionException("Can't set up executors while the app is closing");
+        }
+        // replaced atomically, so concurrent calls can't both install a pool and leave one of them running
+        executorServices.compute(pool, (v, existing) -> {
+            if (existing != null)
+            {
+                if (existing.submittedCount() > 0)
+                {
+                    throw new InternalExpressionException("Executor " + pool.getString() + " already runs tasks and can't be changed");
+                }
+                existing.shutdown();
+            }
+            return new TaskPool(kind, threads, queueLimit);
+        });
+    }
+
+    @Nullable
+    public TaskPool getExistingExecutor(Value pool)
+    {
+        return executorServices.get(pool);
+    }
+
+    public Map<Value, TaskPool> getExecutors()
+    {
+        return executorServices;
     }
 
     public int taskCount()
     {
-        return executorServices.values().stream().map(ThreadPoolExecutor::getActiveCount).reduce(0, Integer::sum);
+        return executorServices.values().stream().mapToInt(TaskPool::activeCount).sum();
     }
 
     public int taskCount(Value pool)
     {
-        return executorServices.containsKey(pool) ? executorServices.get(pool).getActiveCount() : 0;
+        TaskPool executor = executorServices.get(pool);
+        return executor != null ? executor.activeCount() : 0;
     }
 
     public void onClose()
     {
         inTermination = true;
-        executorServices.values().forEach(ThreadPoolExecutor::shutdown);
+        executorServices.values().forEach(TaskPool::shutdown);
         for (ScriptHost uh : userHosts.values())
         {
             uh.onClose();
@@ -0,0 +1,179 @@
+package carpet.script;
+
+import net.minecraft.server.MinecraftServer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue of code that tasks running off the main thread want to run on the server thread, used by {@code task_dock}.
+ * Instead of scheduling a server task for each docked expression, docked code is collected here and run in batches,
+ * each limited by a time budget, so a flood of docked code from tasks can't hold up a tick for long.
+ * The queue is bounded, and tasks trying to dock code into a full queue wait until there is room.
+ */
+public class TaskMailbox
+{
+    /**
+     * Maximum number of docked expressions waiting for the server thread
+     */
+    public static final int CAPACITY = 1024;
+    /**
+     * Time the server thread can spend on docked code in one go, before leaving the rest for later
+     */
+    public static final long BATCH_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private record Docked(Runnable code, CompletableFuture<Void> done)
+    {
+    }
+
+    private final MinecraftServer server;
+    private final BlockingQueue<Docked> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private volatile boolean closed = false;
+
+    private final AtomicLong docked = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+    private final AtomicLong producerWaits = new AtomicLong();
+
+    public TaskMailbox(MinecraftServer server)
+    {
+        this.server = server;
+    }
+
+    /**
+     * Runs the code on the server thread and waits for it to finish. Needs to be called off the server thread.
+     *
+     * @throws CompletionException if the code threw an exception or the mailbox was closed before it run
+     */
+    public void dock(Runnable code)
+    {
+        Docked entry = new Docked(code, new CompletableFuture<>());
+        try
+        {
+            if (!queue.offer(entry))
+            {
+                producerWaits.incrementAndGet();
+                while (!queue.offer(entry, 50, TimeUnit.MILLISECONDS))
+                {
+                    if (closed)
+                    {
+                        throw new CompletionException(new IllegalStateException("Server is shutting down"));
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+        docked.incrementAndGet();
+        if (closed)
+        {
+            // might have missed the final cleanup
+            drain(Long.MAX_VALUE);
+        }
+        scheduleDrain();
+        entry.done().join();
+    }
+
+    private void scheduleDrain()
+    {
+        if (drainScheduled.compareAndSet(false, true))
+        {
+            server.execute(() -> {
+                drainScheduled.set(false);
+                drain(BATCH_BUDGET_NANOS);
+            });
+        }
+    }
+
+    /**
+     * Called on the server thread to run docked code, and every tick so that docked code keeps running when the server
+     * is too busy to pick up scheduled tasks
+     */
+    public void tick()
+    {
+        if (!queue.isEmpty())
+        {
+            drain(BATCH_BUDGET_NANOS);
+        }
+    }
+
+    private void drain(long budget)
+    {
+        if (queue.isEmpty())
+        {
+            return;
+        }
+        batches.incrementAndGet();
+        long start = System.nanoTime();
+        Docked entry;
+        while ((entry = queue.poll()) != null)
+        {
+            if (closed)
+            {
+                entry.done().completeExceptionally(new IllegalStateException("Server is shutting down"));
+                continue;
+            }
+            try
+            {
+                entry.code().run();
+                entry.done().complete(null);
+            }
+            catch (Throwable exc)
+            {
+                entry.done().completeExceptionally(exc);
+            }
+            if (System.nanoTime() - start > budget)
+            {
+                if (!queue.isEmpty())
+                {
+                    overBudget.incrementAndGet();
+                    scheduleDrain();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Fails all docked code that hasn't run yet, so tasks waiting for it can finish
+     */
+    public void close()
+    {
+        closed = true;
+        drain(Long.MAX_VALUE);
+    }
+
+    public int size()
+    {
+        return queue.size();
+    }
+
+    public long dockedCount()
+    {
+        return docked.get();
+    }
+
+    public long batchCount()
+    {
+        return batches.get();
+    }
+
+    public long overBudgetCount()
+    {
+        return overBudget.get();
+    }
+
+    public long producerWaitCount()
+    {
+        return producerWaits.get();
+    }
+}
@@ -0,0 +1,198 @@
+package carpet.script;
+
+import carpet.script.exception.InternalExpressionException;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor running scarpet tasks submitted to one of app's executors, keeping track of how many tasks went through it
+ * and how long they waited and ran.
+ */
+public class TaskPool implements Executor
+{
+    public enum Kind
+    {
+        /**
+         * New virtual thread for each task, so the number of tasks doesn't translate into number of OS threads
+         */
+        VIRTUAL,
+        /**
+         * Fixed number of platform threads with a bounded queue of waiting tasks
+         */
+        FIXED,
+        /**
+         * Work-stealing pool of platform threads, for many short tasks that spawn more tasks
+         */
+        WORK_STEALING;
+
+        public static Kind fromString(String name)
+        {
+            try
+            {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new InternalExpressionException("Unknown executor kind: " + name + ", expected 'virtual', 'fixed' or 'work_stealing'");
+            }
+        }
+
+        public String getName()
+        {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Default number of threads of fixed and work-stealing pools
+     */
+    public static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    /**
+     * Default number of tasks that can wait in the queue of a fixed pool
+     */
+    public static final int DEFAULT_QUEUE = 1024;
+
+    public final Kind kind;
+    public final int threads;
+    public final int queueLimit;
+    private final ExecutorService executor;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong runNanos = new AtomicLong();
+
+    public TaskPool(Kind kind, int threads, int queueLimit)
+    {
+        this.kind = kind;
+        this.threads = threads;
+        this.queueLimit = queueLimit;
+        executor = switch (kind)
+        {
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("scarpet-task-", 0).factory());
+            case FIXED -> new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueLimit));
+            case WORK_STEALING -> new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        };
+        if (executor instanceof ThreadPoolExecutor tpe)
+        {
+            tpe.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    public static TaskPool createDefault()
+    {
+        return new TaskPool(Kind.VIRTUAL, 0, 0);
+    }
+
+    /**
+     * @throws InternalExpressionException if the pool can't take more tasks
+     */
+    @Override
+    public void execute(Runnable task)
+    {
+        long submitTime = System.nanoTime();
+        submitted.incrementAndGet();
+        try
+        {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                started.incrementAndGet();
+                waitNanos.addAndGet(start - submitTime);
+                try
+                {
+                    task.run();
+                }
+                finally
+                {
+                    runNanos.addAndGet(System.nanoTime() - start);
+                    completed.incrementAndGet();
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            submitted.decrementAndGet();
+            rejected.incrementAndGet();
+            if (executor.isShutdown())
+            {
+                throw e;
+            }
+            throw new InternalExpressionException("Executor is full, " + queueLimit + " tasks are already waiting");
+        }
+    }
+
+    /**
+     * @return number of tasks that are running right now
+     */
+    public int activeCount()
+    {
+        return (int) (started.get() - completed.get());
+    }
+
+    /**
+     * @return number of tasks waiting for a thread
+     */
+    public int queuedCount()
+    {
+        return (int) (submitted.get() - started.get());
+    }
+
+    public long submittedCount()
+    {
+        return submitted.get();
+    }
+
+    public long completedCount()
+    {
+        return completed.get();
+    }
+
+    public long rejectedCount()
+    {
+        return rejected.get();
+    }
+
+    /**
+     * @return average time tasks waited for a thread, in milliseconds
+     */
+    public double averageWait()
+    {
+        long count = started.get();
+        return count == 0 ? 0.0 : waitNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * @return average run time of finished tasks, in milliseconds
+     */
+    public double averageTime()
+    {
+        long count = completed.get();
+        return count == 0 ? 0.0 : runNanos.get() / 1e6 / count;
+    }
+
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    public void shutdownNow()
+    {
+        executor.shutdownNow();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
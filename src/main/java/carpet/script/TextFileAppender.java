@@ -0,0 +1,207 @@
+package carpet.script;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps text files apps append to open between calls, so apps logging on every event don't open and close the file
+ * each time. Appended text is buffered, flushed and synced to disk every {@link #SYNC_MILLIS}, and files that weren't
+ * appended to for {@link #IDLE_MILLIS} get closed. Access to each file is guarded by the lock of
+ * {@link DataFileWriter#lockFor(Path)}, which callers of other methods than {@link #closeAll()} need to hold.
+ */
+public class TextFileAppender
+{
+    public static final long SYNC_MILLIS = 1000L;
+    public static final long IDLE_MILLIS = 30_000L;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] NEW_LINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private static final Map<Path, Channel> channels = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Scarpet log writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static
+    {
+        executor.scheduleWithFixedDelay(TextFileAppender::syncAll, SYNC_MILLIS, SYNC_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private static class Channel
+    {
+        private final FileChannel file;
+        private final OutputStream out;
+        private long size;
+        private long lastUsed;
+        private boolean dirty;
+
+        private Channel(Path path) throws IOException
+        {
+            file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            out = new BufferedOutputStream(Channels.newOutputStream(file), BUFFER_SIZE);
+            size = file.size();
+        }
+
+        private void sync() throws IOException
+        {
+            if (dirty)
+            {
+                out.flush();
+                file.force(false);
+                dirty = false;
+            }
+        }
+
+        private void close() throws IOException
+        {
+            sync();
+            out.close();
+        }
+    }
+
+    private TextFileAppender()
+    {
+    }
+
+    /**
+     * Appends lines to the file, opening it if needed
+     *
+     * @param rotateAt size of the file in bytes, after which its content is moved to a backup file, replacing the
+     *                 previous backup, and a new file gets started. 0 means the file can grow without limits.
+     */
+    public static void append(Path file, List<String> lines, boolean newLines, long rotateAt) throws IOException
+    {
+        Path key = key(file);
+        Channel channel = channels.get(key);
+        if (channel != null && rotateAt > 0 && channel.size >= rotateAt)
+        {
+            channels.remove(key);
+            channel.close();
+            channel = null;
+            Files.move(key, rotatedPath(key), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (channel == null)
+        {
+            channel = new Channel(key);
+            channels.put(key, channel);
+        }
+        for (String line : lines)
+        {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            channel.out.write(bytes);
+            channel.size += bytes.length;
+            if (newLines)
+            {
+                channel.out.write(NEW_LINE);
+                channel.size += NEW_LINE.length;
+            }
+        }
+        channel.dirty = true;
+        channel.lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Writes buffered text of the file, so it can be read
+     */
+    public static void flush(Path file) throws IOException
+    {
+        Channel channel = channels.get(key(file));
+        if (channel != null)
+        {
+            channel.out.flush();
+        }
+    }
+
+    /**
+     * Closes the file, so it can be removed or replaced
+     */
+    public static void close(Path file) throws IOException
+    {
+        Channel channel = channels.remove(key(file));
+        if (channel != null)
+        {
+            channel.close();
+        }
+    }
+
+    public static void closeAll()
+    {
+        for (Path file : new ArrayList<>(channels.keySet()))
+        {
+            synchronized (DataFileWriter.lockFor(file))
+            {
+                try
+                {
+                    close(file);
+                }
+                catch (IOException e)
+                {
+                    CarpetScriptServer.LOG.warn("IOException when closing text file", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return path of the backup of a file that went over its size limit, like {@code log-1.txt} for {@code log.txt}
+     */
+    public static Path rotatedPath(Path file)
+    {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? file.resolveSibling(name + "-1") : file.resolveSibling(name.substring(0, dot) + "-1" + name.substring(dot));
+    }
+
+    private static void syncAll()
+    {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Path, Channel> entry : channels.entrySet())
+        {
+            synchronized (DataFileWriter.lockFor(entry.getKey()))
+            {
+                Channel channel = entry.getValue();
+                if (channels.get(entry.getKey()) != channel)
+                {
+                    continue; // closed in the meantime
+                }
+                try
+                {
+                    if (now - channel.lastUsed > IDLE_MILLIS)
+                    {
+                        close(entry.getKey());
+                    }
+                    else
+                    {
+                        channel.sync();
+                    }
+                }
+                catch (IOException e)
+                {
+                    channels.remove(entry.getKey());
+                    CarpetScriptServer.LOG.warn("IOException when writing to text file", e);
+                }
+            }
+        }
+    }
+
+    private static Path key(Path file)
+    {
+        return file.toAbsolutePath().normalize();
+    }
+}
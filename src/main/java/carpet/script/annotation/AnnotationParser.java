@@ -142,6 +142,14 @@ public final class AnnotationParser
         }
     }
 
+    /**
+     * @return number of functions parsed so far
+     */
+    public static int functionCount()
+    {
+        return functionList.size();
+    }
+
     /**
      * <p>Adds all parsed functions to the given {@link Expression}.</p>
      * <p>This is handled automatically by Carpet</p>
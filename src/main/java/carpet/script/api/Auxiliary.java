@@ -113,6 +113,16 @@ public class Auxiliary
     private static final Map<String, SoundSource> mixerMap = Arrays.stream(SoundSource.values()).collect(Collectors.toMap(SoundSource::getName, k -> k));
     public static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().registerTypeAdapter(Value.class, new ScarpetJsonDeserializer()).create();
 
+    private static String storeKey(Value value)
+    {
+        String key = value.getString();
+        if (key.isEmpty() || key.length() > 1024)
+        {
+            throw new InternalExpressionException("Keys of the key-value store need to be between 1 and 1024 characters long");
+        }
+        return key;
+    }
+
     @Deprecated
     public static String recognizeResource(Value value, boolean isFloder)
     {
@@ -844,7 +854,7 @@ public class Auxiliary
             CommandSourceStack innerSource = outerSource.withLevel((ServerLevel) world);
             Context newCtx = c.recreate();
             ((CarpetContext) newCtx).swapSource(innerSource);
-            newCtx.variables = c.variables;
+            newCtx.inheritVariables(c);
             Value retval = lv.get(1).evalValue(newCtx);
             return (cc, tt) -> retval;
         });
@@ -891,23 +901,28 @@ public class Auxiliary
             return result[0];
         });
 
-        expression.addContextFunction("schedule", -1, (c, t, lv) -> {
+        expression.addFunctionWithDelegation("schedule", -1, false, false, (c, t, expr, tok, lv) -> {
             if (lv.size() < 2)
             {
                 throw new InternalExpressionException("'schedule' should have at least 2 arguments, delay and call name");
             }
             long delay = NumericValue.asNumber(lv.get(0)).getLong();
 
-            FunctionArgument functionArgument = FunctionArgument.findIn(c, expression.module, lv, 1, false, false);
-            ((CarpetScriptServer)c.host.scriptServer()).events.scheduleCall(
+            FunctionArgument functionArgument = FunctionArgument.findIn(c, expr.module, lv, 1, false, false);
+            long handle = ((CarpetScriptServer)c.host.scriptServer()).events.scheduleCall(
                     (CarpetContext) c,
                     functionArgument.function,
                     functionArgument.checkedArgs(),
                     delay
             );
-            return Value.TRUE;
+            return NumericValue.of(handle);
         });
 
+        expression.addContextFunction("schedule_cancel", 1, (c, t, lv) ->
+                BooleanValue.of(((CarpetScriptServer) c.host.scriptServer()).events.cancelScheduledCall(
+                        (CarpetScriptHost) c.host, NumericValue.asNumber(lv.get(0)).getLong()
+                )));
+
         expression.addImpureFunction("logger", lv ->
         {
             Value res;
@@ -1056,6 +1071,58 @@ public class Auxiliary
             return BooleanValue.of(((CarpetScriptHost) c.host).writeTagFile(tagValue.getTag(), fdesc));
         });
 
+        expression.addContextFunction("kv_get", 1, (c, t, lv) ->
+        {
+            Tag tag = ((CarpetScriptHost) c.host).getKeyValueStore().get(storeKey(lv.get(0)));
+            return tag == null ? Value.NULL : new NBTSerializableValue(tag).toValue();
+        });
+
+        expression.addContextFunction("kv_put", 2, (c, t, lv) ->
+        {
+            String key = storeKey(lv.get(0));
+            Tag tag;
+            try
+            {
+                tag = lv.get(1).toTag(true, ((CarpetContext) c).registryAccess());
+            }
+            catch (NBTSerializableValue.IncompatibleTypeException exception)
+            {
+                throw new InternalExpressionException("cannot store the value of '" + exception.val.getPrettyString() + "'");
+            }
+            ((CarpetScriptHost) c.host).getKeyValueStore().put(key, tag);
+            return Value.TRUE;
+        });
+
+        expression.addContextFunction("kv_delete", 1, (c, t, lv) ->
+                BooleanValue.of(((CarpetScriptHost) c.host).getKeyValueStore().delete(storeKey(lv.get(0)))));
+
+        expression.addContextFunction("kv_scan", -1, (c, t, lv) ->
+        {
+            if (lv.size() > 3)
+            {
+                throw new InternalExpressionException("'kv_scan' takes at most the first key, the key to stop at, and the limit");
+            }
+            String from = lv.isEmpty() || lv.get(0).isNull() ? null : storeKey(lv.get(0));
+            String to = lv.size() < 2 || lv.get(1).isNull() ? null : storeKey(lv.get(1));
+            int limit = lv.size() < 3 ? Integer.MAX_VALUE : NumericValue.asNumber(lv.get(2)).getInt();
+            if (limit < 0)
+            {
+                throw new InternalExpressionException("'kv_scan' limit can't be negative");
+            }
+            List<Value> pairs = new ArrayList<>();
+            for (Map.Entry<String, Tag> entry : ((CarpetScriptHost) c.host).getKeyValueStore().scan(from, to, limit))
+            {
+                pairs.add(ListValue.of(StringValue.of(entry.getKey()), new NBTSerializableValue(entry.getValue()).toValue()));
+            }
+            return ListValue.wrap(pairs);
+        });
+
+        expression.addContextFunction("kv_commit", 0, (c, t, lv) ->
+        {
+            ((CarpetScriptHost) c.host).commitKeyValueStore();
+            return Value.TRUE;
+        });
+
         expression.addContextFunction("statistic", 3, (c, t, lv) ->
         {
             CarpetContext cc = (CarpetContext) c;
@@ -1082,14 +1149,14 @@ public class Auxiliary
         });
 
         //handle_event('event', function...)
-        expression.addContextFunction("handle_event", -1, (c, t, lv) ->
+        expression.addFunctionWithDelegation("handle_event", -1, false, false, (c, t, expr, tok, lv) ->
         {
             if (lv.size() < 2)
             {
                 throw new InternalExpressionException("'handle_event' requires at least two arguments, event name, and a callback");
             }
             String event = lv.get(0).getString();
-            FunctionArgument callback = FunctionArgument.findIn(c, expression.module, lv, 1, true, false);
+            FunctionArgument callback = FunctionArgument.findIn(c, expr.module, lv, 1, true, false);
             CarpetScriptHost host = ((CarpetScriptHost) c.host);
             if (callback.function == null)
             {
@@ -1098,6 +1165,22 @@ public class Auxiliary
             // args don't need to be checked will be checked at the event
             return BooleanValue.of(host.scriptServer().events.handleCustomEvent(event, host, callback.function, callback.args));
         });
+        //handle_event_batched('event', function...)
+        expression.addFunctionWithDelegation("handle_event_batched", -1, false, false, (c, t, expr, tok, lv) ->
+        {
+            if (lv.size() < 2)
+            {
+                throw new InternalExpressionException("'handle_event_batched' requires at least two arguments, event name, and a callback");
+            }
+            String event = lv.get(0).getString();
+            FunctionArgument callback = FunctionArgument.findIn(c, expr.module, lv, 1, true, false);
+            CarpetScriptHost host = ((CarpetScriptHost) c.host);
+            if (callback.function == null)
+            {
+                return BooleanValue.of(host.scriptServer().events.removeBuiltInEvent(event, host));
+            }
+            return BooleanValue.of(host.scriptServer().events.handleBatchedEvent(event, host, callback.function, callback.args));
+        });
         //signal_event('event', player or null, args.... ) -> number of apps notified
         expression.addContextFunction("signal_event", -1, (c, t, lv) ->
         {
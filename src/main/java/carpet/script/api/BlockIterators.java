@@ -6,24 +6,41 @@ import carpet.script.Expression;
 import carpet.script.Fluff;
 import carpet.script.LazyValue;
 import carpet.script.argument.BlockArgument;
+import carpet.script.argument.FunctionArgument;
 import carpet.script.argument.Vector3Argument;
 import carpet.script.exception.BreakStatement;
 import carpet.script.exception.ContinueStatement;
 import carpet.script.exception.InternalExpressionException;
+import carpet.script.language.Threading;
 import carpet.script.value.BlockValue;
+import carpet.script.value.FunctionValue;
 import carpet.script.value.LazyListValue;
 import carpet.script.value.ListValue;
 import carpet.script.value.NumericValue;
 import carpet.script.value.Value;
+import carpet.script.value.ValueConversions;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 
+import it.unimi.dsi.fastutil.longs.Long2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
 import net.minecraft.core.Vec3i;
+import net.minecraft.nbt.CompoundTag;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.util.Mth;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+
+import org.jspecify.annotations.Nullable;
 
 import static java.lang.Math.abs;
 import static java.lang.Math.max;
@@ -31,8 +48,38 @@ import static java.lang.Math.min;
 
 public class BlockIterators
 {
+    /**
+     * Set within {@code loaded_only}, makes {@code scan} and {@code volume} skip blocks in chunks that are not loaded
+     */
+    private static final ThreadLocal<Boolean> skipUnloaded = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * Number of chunks {@code parallel_scan} copies at once
+     */
+    private static final int PARALLEL_SCAN_BATCH = 256;
+
     public static void apply(Expression expression)
     {
+        // lazy cause it only sets the mode for the expression
+        expression.addLazyFunction("loaded_only", 1, (c, t, lv) ->
+        {
+            if (skipUnloaded.get())
+            {
+                return lv.get(0);
+            }
+            Value result;
+            skipUnloaded.set(true);
+            try
+            {
+                result = lv.get(0).evalValue(c, t);
+            }
+            finally
+            {
+                skipUnloaded.set(false);
+            }
+            return (cc, tt) -> result;
+        });
+
         // lazy cause of lazy expression
         expression.addLazyFunction("scan", (c, t, llv) ->
         {
@@ -99,55 +146,8 @@ public class BlockIterators
             int yprange = upperRange.getY();
             int zprange = upperRange.getZ();
 
-            //saving outer scope
-            LazyValue xVal = c.getVariable("_x");
-            LazyValue yVal = c.getVariable("_y");
-            LazyValue zVal = c.getVariable("_z");
-            LazyValue defaultVal = c.getVariable("_");
-            int sCount = 0;
-            outer:
-            for (int y = cy - yrange; y <= cy + yprange; y++)
-            {
-                int yFinal = y;
-                c.setVariable("_y", (ct, tt) -> new NumericValue(yFinal).bindTo("_y"));
-                for (int x = cx - xrange; x <= cx + xprange; x++)
-                {
-                    int xFinal = x;
-                    c.setVariable("_x", (ct, tt) -> new NumericValue(xFinal).bindTo("_x"));
-                    for (int z = cz - zrange; z <= cz + zprange; z++)
-                    {
-                        int zFinal = z;
-
-                        c.setVariable("_z", (ct, tt) -> new NumericValue(zFinal).bindTo("_z"));
-                        Value blockValue = BlockValue.fromCoords(((CarpetContext) c), xFinal, yFinal, zFinal).bindTo("_");
-                        c.setVariable("_", (ct, tt) -> blockValue);
-                        Value result;
-                        try
-                        {
-                            result = expr.evalValue(c, t);
-                        }
-                        catch (ContinueStatement notIgnored)
-                        {
-                            result = notIgnored.retval;
-                        }
-                        catch (BreakStatement notIgnored)
-                        {
-                            break outer;
-                        }
-                        if (t != Context.VOID && result.getBoolean())
-                        {
-                            sCount += 1;
-                        }
-                    }
-                }
-            }
-            //restoring outer scope
-            c.setVariable("_x", xVal);
-            c.setVariable("_y", yVal);
-            c.setVariable("_z", zVal);
-            c.setVariable("_", defaultVal);
-            int finalSCount = sCount;
-            return (ct, tt) -> new NumericValue(finalSCount);
+            int sCount = iterate(cc, t, expr, cx - xrange, cy - yrange, cz - zrange, cx + xprange, cy + yprange, cz + zprange);
+            return (ct, tt) -> new NumericValue(sCount);
         });
 
         // must be lazy
@@ -179,54 +179,79 @@ public class BlockIterators
             int maxz = max(z1, z2);
             LazyValue expr = llv.get(pos2Locator.offset);
 
-            //saving outer scope
-            LazyValue xVal = c.getVariable("_x");
-            LazyValue yVal = c.getVariable("_y");
-            LazyValue zVal = c.getVariable("_z");
-            LazyValue defaultVal = c.getVariable("_");
-            int sCount = 0;
-            outer:
-            for (int y = miny; y <= maxy; y++)
+            int sCount = iterate(cc, t, expr, minx, miny, minz, maxx, maxy, maxz);
+            return (ct, tt) -> new NumericValue(sCount);
+        });
+
+        expression.addFunctionWithDelegation("parallel_scan", -1, false, false, (c, t, expr, tok, lv) ->
+        {
+            CarpetContext cc = (CarpetContext) c;
+            if (lv.size() < 3)
             {
-                int yFinal = y;
-                c.setVariable("_y", (ct, tt) -> new NumericValue(yFinal).bindTo("_y"));
-                for (int x = minx; x <= maxx; x++)
+                throw new InternalExpressionException("'parallel_scan' needs two positions and a function");
+            }
+            BlockArgument pos1Locator = BlockArgument.findIn(cc, lv, 0);
+            BlockArgument pos2Locator = BlockArgument.findIn(cc, lv, pos1Locator.offset);
+            FunctionArgument functionArgument = FunctionArgument.findIn(c, expr.module, lv, pos2Locator.offset, false, false);
+            FunctionValue function = Threading.pureFunction(functionArgument.function, "parallel_scan");
+            List<Value> extraArgs = functionArgument.args;
+            function.checkArgs(extraArgs.size() + 2);
+            BlockPos pos1 = pos1Locator.block.getPos();
+            BlockPos pos2 = pos2Locator.block.getPos();
+            BoundingBox box = BoundingBox.fromCorners(pos1, pos2);
+            ServerLevel level = cc.level();
+
+            List<ChunkPos> columns = new ArrayList<>();
+            for (int chunkX = SectionPos.blockToSectionCoord(box.minX()); chunkX <= SectionPos.blockToSectionCoord(box.maxX()); chunkX++)
+            {
+                for (int chunkZ = SectionPos.blockToSectionCoord(box.minZ()); chunkZ <= SectionPos.blockToSectionCoord(box.maxZ()); chunkZ++)
                 {
-                    int xFinal = x;
-                    c.setVariable("_x", (ct, tt) -> new NumericValue(xFinal).bindTo("_x"));
-                    for (int z = minz; z <= maxz; z++)
+                    columns.add(new ChunkPos(chunkX, chunkZ));
+                }
+            }
+            int minSection = max(SectionPos.blockToSectionCoord(box.minY()), SectionPos.blockToSectionCoord(level.getMinY()));
+            int maxSection = min(SectionPos.blockToSectionCoord(box.maxY()), SectionPos.blockToSectionCoord(level.getMaxY()));
+            long count = 0;
+            // chunks are copied in batches, to keep the number of copied sections in memory in check
+            for (int batch = 0; batch < columns.size(); batch += PARALLEL_SCAN_BATCH)
+            {
+                List<ChunkPos> batchColumns = columns.subList(batch, min(batch + PARALLEL_SCAN_BATCH, columns.size()));
+                List<SectionSnapshot> snapshots = new ArrayList<>();
+                // snapshots are taken on the main thread, so the sections are not changing while being copied
+                cc.server().executeBlocking(() ->
+                {
+                    for (ChunkPos column : batchColumns)
                     {
-                        int zFinal = z;
-                        c.setVariable("_z", (ct, tt) -> new NumericValue(zFinal).bindTo("_z"));
-                        Value blockValue = BlockValue.fromCoords(((CarpetContext) c), xFinal, yFinal, zFinal).bindTo("_");
-                        c.setVariable("_", (ct, tt) -> blockValue);
-                        Value result;
-                        try
+                        if (!level.hasChunk(column.x, column.z))
                         {
-                            result = expr.evalValue(c, t);
-                        }
-                        catch (ContinueStatement notIgnored)
-                        {
-                            result = notIgnored.retval;
+                            continue;
                         }
-                        catch (BreakStatement notIgnored)
+                        LevelChunk chunk = level.getChunk(column.x, column.z);
+                        for (int sectionY = minSection; sectionY <= maxSection; sectionY++)
                         {
-                            break outer;
-                        }
-                        if (t != Context.VOID && result.getBoolean())
-                        {
-                            sCount += 1;
+                            LevelChunkSection section = chunk.getSection(chunk.getSectionIndexFromSectionY(sectionY));
+                            snapshots.add(new SectionSnapshot(SectionPos.of(column.x, sectionY, column.z), section.hasOnlyAir() ? null : section.getStates().copy()));
                         }
                     }
+                });
+                // workers get copies of blocks not tied to the world and their own contexts, and only run pure functions,
+                // so they never need the main thread, which may be waiting for them
+                List<Long> counts = Threading.forChunks(c, snapshots, (worker, chunk) -> {
+                    FunctionValue workerFunction = function.withCopiedOuterState();
+                    List<Value> workerArgs = Threading.copies(extraArgs);
+                    long found = 0;
+                    for (SectionSnapshot snapshot : chunk)
+                    {
+                        found += snapshot.scan(worker, level, box, workerFunction, workerArgs);
+                    }
+                    return found;
+                });
+                for (long found : counts)
+                {
+                    count += found;
                 }
             }
-            //restoring outer scope
-            c.setVariable("_x", xVal);
-            c.setVariable("_y", yVal);
-            c.setVariable("_z", zVal);
-            c.setVariable("_", defaultVal);
-            int finalSCount = sCount;
-            return (ct, tt) -> new NumericValue(finalSCount);
+            return new NumericValue(count);
         });
 
         expression.addContextFunction("neighbours", -1, (c, t, lv) ->
@@ -318,6 +343,10 @@ public class BlockIterators
                 final int maxy = cy + smaxy;
                 final int maxz = cz + smaxz;
 
+                // visited chunks are only kept for one pass, blocks from later passes see the world as it is then
+                @Nullable
+                ChunkLookup chunks;
+
                 int x;
                 int y;
                 int z;
@@ -335,7 +364,8 @@ public class BlockIterators
                 @Override
                 public Value next()
                 {
-                    Value r = BlockValue.fromCoords(cc, x, y, z);
+                    BlockPos pos = BlockValue.locateBlockPos(cc, x, y, z);
+                    Value r = new BlockValue(chunks.stateAt(pos), cc.level(), pos);
                     //possibly reroll context
                     x++;
                     if (x > maxx)
@@ -347,6 +377,10 @@ public class BlockIterators
                             z = minz;
                             y++;
                             // hasNext should fail if we went over
+                            if (y > maxy)
+                            {
+                                chunks = null;
+                            }
                         }
                     }
 
@@ -366,6 +400,7 @@ public class BlockIterators
                     x = minx;
                     y = miny;
                     z = minz;
+                    chunks = new ChunkLookup(cc.level());
                 }
 
                 @Override
@@ -542,4 +577,230 @@ public class BlockIterators
             }
         });
     }
+
+    /**
+     * Evaluates the expression for each block in the box, in y, x, z order, with the block in {@code _}
+     * and its coordinates in {@code _x}, {@code _y} and {@code _z}
+     *
+     * @return number of blocks for which the expression was true
+     */
+    private static int iterate(CarpetContext c, Context.Type t, LazyValue expr, int minx, int miny, int minz, int maxx, int maxy, int maxz)
+    {
+        boolean loadedOnly = skipUnloaded.get();
+        ChunkLookup chunks = new ChunkLookup(c.level());
+        // variables are reused for all blocks, and only create values when the expression reads them
+        Coordinate xCursor = new Coordinate("_x");
+        Coordinate yCursor = new Coordinate("_y");
+        Coordinate zCursor = new Coordinate("_z");
+        BlockCursor blockCursor = new BlockCursor(c, chunks);
+        //saving outer scope
+        LazyValue xVal = c.getVariable("_x");
+        LazyValue yVal = c.getVariable("_y");
+        LazyValue zVal = c.getVariable("_z");
+        LazyValue defaultVal = c.getVariable("_");
+        int sCount = 0;
+        try
+        {
+            outer:
+            for (int y = miny; y <= maxy; y++)
+            {
+                yCursor.set(y);
+                c.setVariable("_y", yCursor);
+                for (int x = minx; x <= maxx; x++)
+                {
+                    xCursor.set(x);
+                    c.setVariable("_x", xCursor);
+                    for (int z = minz; z <= maxz; z++)
+                    {
+                        if (loadedOnly && !chunks.isLoaded(c, x, z))
+                        {
+                            continue;
+                        }
+                        zCursor.set(z);
+                        c.setVariable("_z", zCursor);
+                        blockCursor.set(x, y, z);
+                        c.setVariable("_", blockCursor);
+                        Value result;
+                        try
+                        {
+                            result = expr.evalValue(c, t);
+                        }
+                        catch (ContinueStatement notIgnored)
+                        {
+                            result = notIgnored.retval;
+                        }
+                        catch (BreakStatement notIgnored)
+                        {
+                            break outer;
+                        }
+                        if (t != Context.VOID && result.getBoolean())
+                        {
+                            sCount += 1;
+                        }
+                    }
+                }
+            }
+        }
+        finally
+        {
+            //restoring outer scope
+            c.setVariable("_x", xVal);
+            c.setVariable("_y", yVal);
+            c.setVariable("_z", zVal);
+            c.setVariable("_", defaultVal);
+        }
+        return sCount;
+    }
+
+    private static final class Coordinate implements LazyValue.Cursor
+    {
+        private final String name;
+        private int coordinate;
+        @Nullable
+        private Value value;
+
+        private Coordinate(String name)
+        {
+            this.name = name;
+        }
+
+        private void set(int coordinate)
+        {
+            this.coordinate = coordinate;
+            value = null;
+        }
+
+        @Override
+        public Value evalValue(Context c, Context.Type type)
+        {
+            if (value == null)
+            {
+                value = new NumericValue(coordinate).bindTo(name);
+            }
+            return value;
+        }
+    }
+
+    private static final class BlockCursor implements LazyValue.Cursor
+    {
+        private final CarpetContext context;
+        private final ChunkLookup chunks;
+        private int x;
+        private int y;
+        private int z;
+        @Nullable
+        private Value value;
+
+        private BlockCursor(CarpetContext context, ChunkLookup chunks)
+        {
+            this.context = context;
+            this.chunks = chunks;
+        }
+
+        private void set(int x, int y, int z)
+        {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            value = null;
+        }
+
+        @Override
+        public Value evalValue(Context c, Context.Type type)
+        {
+            if (value == null)
+            {
+                BlockPos pos = BlockValue.locateBlockPos(context, x, y, z);
+                value = new BlockValue(chunks.stateAt(pos), context.level(), pos).bindTo("_");
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Chunks visited by an iteration, so block states are read from the chunk sections directly, and iterations
+     * off the main thread only wait for the server once per chunk, not once per block
+     */
+    private static final class ChunkLookup
+    {
+        private final ServerLevel level;
+        private final Long2ObjectOpenHashMap<LevelChunk> chunks = new Long2ObjectOpenHashMap<>();
+        private final Long2BooleanOpenHashMap loaded = new Long2BooleanOpenHashMap();
+
+        private ChunkLookup(ServerLevel level)
+        {
+            this.level = level;
+        }
+
+        private boolean isLoaded(CarpetContext c, int x, int z)
+        {
+            BlockPos origin = c.origin();
+            int chunkX = SectionPos.blockToSectionCoord(x + origin.getX());
+            int chunkZ = SectionPos.blockToSectionCoord(z + origin.getZ());
+            long key = ChunkPos.asLong(chunkX, chunkZ);
+            if (loaded.containsKey(key))
+            {
+                return loaded.get(key);
+            }
+            boolean isLoaded = level.hasChunk(chunkX, chunkZ);
+            loaded.put(key, isLoaded);
+            return isLoaded;
+        }
+
+        private synchronized BlockState stateAt(BlockPos pos)
+        {
+            if (level.isOutsideBuildHeight(pos))
+            {
+                return level.getBlockState(pos);
+            }
+            int chunkX = SectionPos.blockToSectionCoord(pos.getX());
+            int chunkZ = SectionPos.blockToSectionCoord(pos.getZ());
+            return chunks.computeIfAbsent(ChunkPos.asLong(chunkX, chunkZ), k -> level.getChunk(chunkX, chunkZ)).getBlockState(pos);
+        }
+    }
+
+    /**
+     * Copy of a chunk section, that can be read from any thread while the world keeps changing
+     *
+     * @param states copied block states, or null if the section was empty
+     */
+    private record SectionSnapshot(SectionPos section, @Nullable PalettedContainer<BlockState> states)
+    {
+        /**
+         * Calls the function with each block of the section within the box and its position
+         *
+         * @return number of blocks for which the function returned true
+         */
+        private long scan(Context c, ServerLevel level, BoundingBox box, FunctionValue function, List<Value> extraArgs)
+        {
+            BlockState air = Blocks.AIR.defaultBlockState();
+            long count = 0;
+            int minX = max(box.minX(), section.minBlockX());
+            int minY = max(box.minY(), section.minBlockY());
+            int minZ = max(box.minZ(), section.minBlockZ());
+            int maxX = min(box.maxX(), section.maxBlockX());
+            int maxY = min(box.maxY(), section.maxBlockY());
+            int maxZ = min(box.maxZ(), section.maxBlockZ());
+            for (int y = minY; y <= maxY; y++)
+            {
+                for (int x = minX; x <= maxX; x++)
+                {
+                    for (int z = minZ; z <= maxZ; z++)
+                    {
+                        BlockState state = states == null ? air : states.get(x & 15, y & 15, z & 15);
+                        List<Value> args = new ArrayList<>(extraArgs.size() + 2);
+                        // level only resolves the block name, the block has no position to read anything else from
+                        args.add(new BlockValue(state, level, (CompoundTag) null));
+                        args.add(ValueConversions.of(new BlockPos(x, y, z)));
+                        args.addAll(extraArgs);
+                        if (function.callInContext(c, Context.BOOLEAN, args).evalValue(c, Context.BOOLEAN).getBoolean())
+                        {
+                            count++;
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+    }
 }
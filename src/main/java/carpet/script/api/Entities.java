@@ -284,7 +284,7 @@ public class Entities
             return EntityValue.getEntityDescriptor(desc, ((CarpetContext) c).server()).listValue(((CarpetContext) c).registryAccess());
         });
 
-        expression.addContextFunction("entity_load_handler", -1, (c, t, lv) ->
+        expression.addFunctionWithDelegation("entity_load_handler", -1, false, false, (c, t, expr, tok, lv) ->
         {
             if (lv.size() < 2)
             {
@@ -296,7 +296,7 @@ public class Entities
                     : Collections.singletonList(entityValue.getString());
             Set<EntityType<? extends Entity>> types = new HashSet<>();
             descriptors.forEach(s -> types.addAll(EntityValue.getEntityDescriptor(s, ((CarpetContext) c).server()).types));
-            FunctionArgument funArg = FunctionArgument.findIn(c, expression.module, lv, 1, true, false);
+            FunctionArgument funArg = FunctionArgument.findIn(c, expr.module, lv, 1, true, false);
             CarpetEventServer events = ((CarpetScriptHost) c.host).scriptServer().events;
             if (funArg.function == null)
             {
@@ -321,7 +321,7 @@ public class Entities
         });
 
         // or update
-        expression.addContextFunction("entity_event", -1, (c, t, lv) ->
+        expression.addFunctionWithDelegation("entity_event", -1, false, false, (c, t, expr, tok, lv) ->
         {
             if (lv.size() < 3)
             {
@@ -334,7 +334,7 @@ public class Entities
             }
             String what = lv.get(1).getString();
 
-            FunctionArgument funArg = FunctionArgument.findIn(c, expression.module, lv, 2, true, false);
+            FunctionArgument funArg = FunctionArgument.findIn(c, expr.module, lv, 2, true, false);
 
             ev.setEvent((CarpetContext) c, what, funArg.function, funArg.args);
 
@@ -1,6 +1,7 @@
 package carpet.script.api;
 
 import carpet.script.CarpetContext;
+import carpet.script.CarpetScriptServer;
 import carpet.script.Expression;
 import carpet.script.exception.ExpressionException;
 import carpet.script.exception.InternalExpressionException;
@@ -40,7 +41,7 @@ public class Threading
             RuntimeException[] internal = new RuntimeException[]{null};
             try
             {
-                ((CarpetContext) c).server().executeBlocking(() ->
+                ((CarpetScriptServer) cc.host.scriptServer()).taskMailbox.dock(() ->
                 {
                     try
                     {
@@ -71,8 +72,6 @@ public class Threading
             }
             Value ret = result[0]; // preventing from lazy evaluating of the result in case a future completes later
             return (ct, tt) -> ret;
-            // pass through placeholder
-            // implmenetation should dock the task on the main thread.
         });
     }
 }
@@ -15,6 +15,7 @@ import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.ThrowStatement;
 import carpet.script.exception.Throwables;
 import carpet.script.utils.BiomeInfo;
+import carpet.script.utils.BlockEditBuffer;
 import carpet.script.utils.InputValidator;
 import carpet.script.utils.WorldTools;
 import carpet.script.value.BlockValue;
@@ -53,7 +54,6 @@ import net.minecraft.server.level.TicketType;
 import net.minecraft.sounds.SoundEvents;
 import net.minecraft.tags.ItemTags;
 import net.minecraft.tags.TagKey;
-import net.minecraft.util.ProblemReporter;
 import net.minecraft.util.random.WeightedList;
 import net.minecraft.world.level.ServerExplosion;
 import net.minecraft.world.level.chunk.ChunkGenerator;
@@ -66,7 +66,6 @@ import net.minecraft.world.level.levelgen.NoiseRouter;
 import net.minecraft.world.level.levelgen.RandomState;
 import net.minecraft.world.level.levelgen.structure.Structure;
 import net.minecraft.world.level.levelgen.structure.StructureType;
-import net.minecraft.world.level.storage.TagValueInput;
 import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.apache.commons.lang3.tuple.Pair;
 
@@ -281,7 +280,14 @@ public class WorldAccess
             {
                 throw new InternalExpressionException("Block requires at least one parameter");
             }
-            return NBTSerializableValue.of(BlockArgument.findIn((CarpetContext) c, lv, 0, true).block.getData());
+            BlockArgument locator = BlockArgument.findIn((CarpetContext) c, lv, 0, true);
+            CompoundTag data = locator.block.getData();
+            if (lv.size() <= locator.offset || data == null)
+            {
+                return NBTSerializableValue.of(data);
+            }
+            // block entities can only be saved entirely, but the path is read without copying the saved tag
+            return NBTSerializableValue.view(data).get(lv.get(locator.offset));
         });
 
         // poi_get(pos, radius?, type?, occupation?, column_mode?)
@@ -743,6 +749,13 @@ public class WorldAccess
             return (cc, tt) -> result[0];
         });
 
+        // lazy cause the block changes are applied after the expression is evaluated
+        expression.addLazyFunction("batch_edits", 1, (c, t, lv) ->
+        {
+            Value result = BlockEditBuffer.collect(((CarpetContext) c).server(), () -> lv.get(0).evalValue(c, t));
+            return (cc, tt) -> result;
+        });
+
         expression.addContextFunction("set", -1, (c, t, lv) ->
         {
             CarpetContext cc = (CarpetContext) c;
@@ -814,29 +827,15 @@ public class WorldAccess
             }
             BlockState finalSourceBlockState = sourceBlockState;
             BlockPos targetPos = targetLocator.block.getPos();
-            Boolean[] result = new Boolean[]{true};
-            cc.server().executeBlocking(() ->
+            BlockEditBuffer buffer = BlockEditBuffer.current();
+            if (buffer != null)
             {
-                boolean success = world.setBlock(targetPos, finalSourceBlockState, Block.UPDATE_CLIENTS  | Block.UPDATE_SKIP_BLOCK_ENTITY_SIDEEFFECTS );
-                if (finalData != null)
-                {
-                    BlockEntity be = world.getBlockEntity(targetPos);
-                    if (be != null)
-                    {
-                        CompoundTag destTag = finalData.copy();
-                        destTag.putInt("x", targetPos.getX());
-                        destTag.putInt("y", targetPos.getY());
-                        destTag.putInt("z", targetPos.getZ());
-                        try (final ProblemReporter.ScopedCollector reporter = new ProblemReporter.ScopedCollector(be.problemPath(), CarpetScriptServer.LOG)) {
-                            be.loadWithComponents(TagValueInput.create(reporter, world.registryAccess(), destTag));
-                        }
-                        be.setChanged();
-                        success = true;
-                    }
-                }
-                result[0] = success;
-            });
-            return !result[0] ? Value.FALSE : new BlockValue(finalSourceBlockState, world, targetLocator.block.getPos());
+                buffer.add(world, targetPos, finalSourceBlockState, finalData);
+                return new BlockValue(finalSourceBlockState, world, targetPos);
+            }
+            Boolean[] result = new Boolean[]{true};
+            cc.server().executeBlocking(() -> result[0] = BlockEditBuffer.setBlock(world, targetPos, finalSourceBlockState, finalData));
+            return !result[0] ? Value.FALSE : new BlockValue(finalSourceBlockState, world, targetPos);
         });
 
         expression.addContextFunction("destroy", -1, (c, t, lv) ->
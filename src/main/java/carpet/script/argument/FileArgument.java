@@ -2,8 +2,10 @@ package carpet.script.argument;
 
 import carpet.script.CarpetScriptServer;
 import carpet.script.Context;
+import carpet.script.DataFileWriter;
 import carpet.script.Module;
 import carpet.script.ScriptHost;
+import carpet.script.TextFileAppender;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.ThrowStatement;
 import carpet.script.exception.Throwables;
@@ -33,11 +35,13 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -61,8 +65,6 @@ public class FileArgument
     private Path zipPath;
     private final ScriptHost host;
 
-    public static final Object writeIOSync = new Object();
-
     public void close()
     {
         if (zfs != null && zfs.isOpen())
@@ -245,6 +247,20 @@ public class FileArgument
         }
     }
 
+    /**
+     * @return lock guarding the file, or the zip file containing it, without opening the zip file
+     */
+    private Object fileLock(@Nullable Module module)
+    {
+        if (!isShared && module == null)
+        {
+            return this; // there is no file
+        }
+        return DataFileWriter.lockFor(resolve(zipContainer == null
+                ? getDescriptor(module, resource) + (isFolder ? "" : type.extension)
+                : getDescriptor(module, zipContainer)));
+    }
+
     @Nullable
     private Path moduleRootPath(@Nullable Module module)
     {
@@ -276,7 +292,7 @@ public class FileArgument
     {
         try
         {
-            synchronized (writeIOSync)
+            synchronized (fileLock(module))
             {
                 Path dataFile = toPath(module);//, resourceName, supportedTypes.get(type), isShared);
                 if (dataFile == null)
@@ -284,6 +300,11 @@ public class FileArgument
                     return false;
                 }
                 createPaths(dataFile);
+                if (zipContainer == null)
+                {
+                    DataFileWriter.flush(dataFile);
+                    closeAppended(dataFile);
+                }
                 action.accept(dataFile);
             }
         }
@@ -320,9 +341,13 @@ public class FileArgument
     public Stream<String> listFolder(Module module)
     {
         Stream<String> strings;
+        if (zipContainer == null && (isShared || module != null))
+        {
+            DataFileWriter.flushFolder(resolve(getDescriptor(module, resource)));
+        }
         try (Stream<Path> result = listFiles(module))
         {
-            synchronized (writeIOSync)
+            synchronized (fileLock(module))
             {
                 if (result == null)
                 {
@@ -369,11 +394,14 @@ public class FileArgument
         }
     }
 
-    public boolean appendToTextFile(Module module, List<String> message)
+    /**
+     * @param rotateAt size in bytes after which the file gets moved to a backup and a new one started, or 0 for no limit
+     */
+    public boolean appendToTextFile(Module module, List<String> message, long rotateAt)
     {
         try
         {
-            synchronized (writeIOSync)
+            synchronized (fileLock(module))
             {
                 Path dataFile = toPath(module);
                 if (dataFile == null)
@@ -381,6 +409,11 @@ public class FileArgument
                     return false;
                 }
                 createPaths(dataFile);
+                if (zipContainer == null)
+                {
+                    TextFileAppender.append(dataFile, message, type == Type.TEXT, rotateAt);
+                    return true;
+                }
                 OutputStream out = Files.newOutputStream(dataFile, StandardOpenOption.APPEND, StandardOpenOption.CREATE);
                 try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)))
                 {
@@ -407,19 +440,52 @@ public class FileArgument
         return true;
     }
 
+    private void flushAppended(Path dataFile)
+    {
+        try
+        {
+            if (zipContainer == null)
+            {
+                TextFileAppender.flush(dataFile);
+            }
+        }
+        catch (IOException e)
+        {
+            CarpetScriptServer.LOG.warn("IOException when writing to text file", e);
+            throw new ThrowStatement("Error when writing to the file: " + e, Throwables.IO_EXCEPTION);
+        }
+    }
+
+    private static void closeAppended(Path dataFile)
+    {
+        try
+        {
+            TextFileAppender.close(dataFile);
+        }
+        catch (IOException e)
+        {
+            CarpetScriptServer.LOG.warn("IOException when closing text file", e);
+            throw new ThrowStatement("Error when writing to the file: " + e, Throwables.IO_EXCEPTION);
+        }
+    }
+
     @Nullable
     public Tag getNbtData(Module module) // aka getData
     {
         try
         {
-            synchronized (writeIOSync)
+            synchronized (fileLock(module))
             {
                 Path dataFile = toPath(module);
-                if (dataFile == null || !Files.exists(dataFile))
+                if (dataFile == null)
                 {
                     return null;
                 }
-                return readTag(dataFile);
+                if (zipContainer == null)
+                {
+                    return DataFileWriter.read(dataFile);
+                }
+                return Files.exists(dataFile) ? readTag(dataFile) : null;
             }
         }
         finally
@@ -483,7 +549,7 @@ public class FileArgument
     {
         try
         {
-            synchronized (writeIOSync)
+            synchronized (fileLock(module))
             {
                 Path dataFile = toPath(module);
                 if (dataFile == null)
@@ -491,7 +557,13 @@ public class FileArgument
                     return false;
                 }
                 createPaths(dataFile);
-                return writeTagDisk(tag, dataFile, zipContainer != null);
+                if (zipContainer != null)
+                {
+                    // zip file system gets closed right after, so it can't be written later
+                    return writeTagDisk(tag, dataFile, true);
+                }
+                DataFileWriter.write(dataFile, tag);
+                return true;
             }
         }
         finally
@@ -530,8 +602,14 @@ public class FileArgument
             }
             if (!zipped)
             {
-                Files.deleteIfExists(original);
-                Files.move(path, original);
+                try
+                {
+                    Files.move(path, original, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                catch (AtomicMoveNotSupportedException e)
+                {
+                    Files.move(path, original, StandardCopyOption.REPLACE_EXISTING);
+                }
             }
             return true;
         }
@@ -546,14 +624,19 @@ public class FileArgument
     {
         try
         {
-            synchronized (writeIOSync)
+            synchronized (fileLock(module))
             {
                 Path dataFile = toPath(module);
                 if (dataFile == null)
                 {
                     return false;
                 }
-                return Files.deleteIfExists(dataFile);
+                if (zipContainer != null)
+                {
+                    return Files.deleteIfExists(dataFile);
+                }
+                TextFileAppender.close(dataFile);
+                return DataFileWriter.delete(dataFile);
             }
         }
         catch (IOException e)
@@ -572,7 +655,7 @@ public class FileArgument
     {
         try
         {
-            synchronized (writeIOSync)
+            synchronized (fileLock(module))
             {
                 Path dataFile = toPath(module);
                 if (dataFile == null)
@@ -583,6 +666,7 @@ public class FileArgument
                 {
                     return null;
                 }
+                flushAppended(dataFile);
                 return listFileContent(dataFile);
             }
         }
@@ -620,13 +704,14 @@ public class FileArgument
     {
         try
         {
-            synchronized (writeIOSync)
+            synchronized (fileLock(module))
             {
                 Path dataFile = toPath(module);
                 if (dataFile == null || !Files.exists(dataFile))
                 {
                     return null;
                 }
+                flushAppended(dataFile);
                 return readJsonContent(dataFile);
             }
         }
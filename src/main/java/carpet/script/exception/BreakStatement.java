@@ -6,8 +6,18 @@ import org.jspecify.annotations.Nullable;
 
 public class BreakStatement extends ExitStatement
 {
+    /**
+     * Shared by all breaks without a value. Exits don't carry a stack trace, so the same one can be thrown anywhere.
+     */
+    public static final BreakStatement EMPTY = new BreakStatement();
+
     public BreakStatement(@Nullable Value value)
     {
         super(value);
     }
+
+    private BreakStatement()
+    {
+        super(null, true);
+    }
 }
@@ -6,8 +6,18 @@ import org.jspecify.annotations.Nullable;
 
 public class ContinueStatement extends ExitStatement
 {
+    /**
+     * Shared by all continues without a value. Exits don't carry a stack trace, so the same one can be thrown anywhere.
+     */
+    public static final ContinueStatement EMPTY = new ContinueStatement();
+
     public ContinueStatement(@Nullable Value value)
     {
         super(value);
     }
+
+    private ContinueStatement()
+    {
+        super(null, true);
+    }
 }
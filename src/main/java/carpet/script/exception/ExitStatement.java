@@ -14,4 +14,13 @@ public class ExitStatement extends StacklessRuntimeException
     {
         retval = value;
     }
+
+    /**
+     * @see StacklessRuntimeException#StacklessRuntimeException(boolean)
+     */
+    protected ExitStatement(@Nullable Value value, boolean shared)
+    {
+        super(shared);
+        retval = value;
+    }
 }
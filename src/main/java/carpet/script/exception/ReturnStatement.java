@@ -4,8 +4,18 @@ import carpet.script.value.Value;
 
 public class ReturnStatement extends ExitStatement
 {
+    /**
+     * Shared by all returns without a value. Exits don't carry a stack trace, so the same one can be thrown anywhere.
+     */
+    public static final ReturnStatement NULL = new ReturnStatement();
+
     public ReturnStatement(Value value)
     {
         super(value);
     }
+
+    private ReturnStatement()
+    {
+        super(Value.NULL, true);
+    }
 }
@@ -17,6 +17,15 @@ public abstract class StacklessRuntimeException extends RuntimeException
         super(message);
     }
 
+    /**
+     * @param shared whether the instance is shared by all threads, so it never records suppressed exceptions
+     *               or a stack trace, even in debug mode
+     */
+    protected StacklessRuntimeException(boolean shared)
+    {
+        super(null, null, !shared, !shared);
+    }
+
     @Override
     public Throwable fillInStackTrace()
     {
@@ -232,7 +232,7 @@ public class Carpet
                 {
                     namespace = "";
                 }
-                handler.call(() -> Arrays.asList(
+                handler.callDeferrable(() -> Arrays.asList(
                                 new StringValue(namespace + rule.name()),
                                 new StringValue(RuleHelper.toRuleString(rule.value()))
                         ), () -> source);
@@ -7,10 +7,13 @@ import carpet.script.exception.BreakStatement;
 import carpet.script.exception.ContinueStatement;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.value.AbstractListValue;
+import carpet.script.value.LazyListValue;
 import carpet.script.value.ListValue;
 import carpet.script.value.NumericValue;
 import carpet.script.value.Value;
 
+import org.jspecify.annotations.Nullable;
+
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -26,7 +29,7 @@ public class Loops
         {
             if (lv.isEmpty())
             {
-                throw new BreakStatement(null);
+                throw BreakStatement.EMPTY;
             }
             if (lv.size() == 1)
             {
@@ -39,7 +42,7 @@ public class Loops
         {
             if (lv.isEmpty())
             {
-                throw new ContinueStatement(null);
+                throw ContinueStatement.EMPTY;
             }
             if (lv.size() == 1)
             {
@@ -58,7 +61,9 @@ public class Loops
                 Value lastOne = Value.NULL;
                 //scoping
                 LazyValue defaultVal = c.getVariable("_");
-                c.setVariable("_", (cc, tt) -> new NumericValue(0).bindTo("_"));
+                LazyValue.Binding counter = new LazyValue.Binding("_");
+                counter.set(new NumericValue(0));
+                c.setVariable("_", counter);
                 while (condition.evalValue(c, Context.BOOLEAN).getBoolean())
                 {
                     try
@@ -77,8 +82,8 @@ public class Loops
                         }
                     }
                     i++;
-                    long seriously = i;
-                    c.setVariable("_", (cc, tt) -> new NumericValue(seriously).bindTo("_"));
+                    counter.set(new NumericValue(i));
+                    c.setVariable("_", counter);
                 }
                 //revering scope
                 c.setVariable("_", defaultVal);
@@ -92,7 +97,9 @@ public class Loops
             Value lastOne = Value.NULL;
             //scoping
             LazyValue defaultVal = c.getVariable("_");
-            c.setVariable("_", (cc, tt) -> new NumericValue(0).bindTo("_"));
+            LazyValue.Binding counter = new LazyValue.Binding("_");
+            counter.set(new NumericValue(0));
+            c.setVariable("_", counter);
             while (i < limit && condition.evalValue(c, Context.BOOLEAN).getBoolean())
             {
                 try
@@ -111,8 +118,8 @@ public class Loops
                     }
                 }
                 i++;
-                long seriously = i;
-                c.setVariable("_", (cc, tt) -> new NumericValue(seriously).bindTo("_"));
+                counter.set(new NumericValue(i));
+                c.setVariable("_", counter);
             }
             //revering scope
             c.setVariable("_", defaultVal);
@@ -129,10 +136,11 @@ public class Loops
             LazyValue expr = lv.get(1);
             //scoping
             LazyValue defaultVal = c.getVariable("_");
+            LazyValue.Binding counter = new LazyValue.Binding("_");
             for (long i = 0; i < limit; i++)
             {
-                long whyYouAsk = i;
-                c.setVariable("_", (cc, tt) -> new NumericValue(whyYouAsk).bindTo("_"));
+                counter.set(new NumericValue(i));
+                c.setVariable("_", counter);
                 try
                 {
                     lastOne = expr.evalValue(c, t);
@@ -173,18 +181,21 @@ public class Loops
             //scoping
             LazyValue defaultVal = c.getVariable("_");
             LazyValue iterVal = c.getVariable("_i");
+            LazyValue.Binding item = new LazyValue.Binding("_");
+            LazyValue.Binding index = new LazyValue.Binding("_i");
             List<Value> result = new ArrayList<>();
             for (int i = 0; iterator.hasNext(); i++)
             {
-                Value next = iterator.next();
+                Value next = iterator.next().bindable();
                 if(next == Value.EOL) {
                     continue;
                 }
                 String variable = next.boundVariable;
                 next.bindTo("_");
-                int doYouReally = i;
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(doYouReally).bindTo("_i"));
+                item.set(next);
+                index.set(new NumericValue(i));
+                c.setVariable("_", item);
+                c.setVariable("_i", index);
                 try
                 {
                     result.add(expr.evalValue(c, t));
@@ -230,18 +241,21 @@ public class Loops
             //scoping
             LazyValue defaultVal = c.getVariable("_");
             LazyValue iterVal = c.getVariable("_i");
+            LazyValue.Binding item = new LazyValue.Binding("_");
+            LazyValue.Binding index = new LazyValue.Binding("_i");
             List<Value> result = new ArrayList<>();
             for (int i = 0; iterator.hasNext(); i++)
             {
-                Value next = iterator.next();
+                Value next = iterator.next().bindable();
                 if(next == Value.EOL) {
                     continue;
                 }
                 String veriable = next.boundVariable;
                 next.bindTo("_");
-                int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
+                item.set(next);
+                index.set(new NumericValue(i));
+                c.setVariable("_", item);
+                c.setVariable("_i", index);
                 try
                 {
                     if (expr.evalValue(c, Context.BOOLEAN).getBoolean())
@@ -290,18 +304,21 @@ public class Loops
             //scoping
             LazyValue defaultVal = c.getVariable("_");
             LazyValue iterVal = c.getVariable("_i");
+            LazyValue.Binding item = new LazyValue.Binding("_");
+            LazyValue.Binding index = new LazyValue.Binding("_i");
             Value result = Value.NULL;
             for (int i = 0; iterator.hasNext(); i++)
             {
-                Value next = iterator.next();
+                Value next = iterator.next().bindable();
                 if(next == Value.EOL) {
                     continue;
                 }
                 String variable = next.boundVariable;
                 next.bindTo("_");
-                int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
+                item.set(next);
+                index.set(new NumericValue(i));
+                c.setVariable("_", item);
+                c.setVariable("_i", index);
                 try
                 {
                     if (expr.evalValue(c, Context.BOOLEAN).getBoolean())
@@ -350,18 +367,21 @@ public class Loops
             //scoping
             LazyValue defaultVal = c.getVariable("_");
             LazyValue iterVal = c.getVariable("_i");
+            LazyValue.Binding item = new LazyValue.Binding("_");
+            LazyValue.Binding index = new LazyValue.Binding("_i");
             LazyValue result = LazyValue.TRUE;
             for (int i = 0; iterator.hasNext(); i++)
             {
-                Value next = iterator.next();
+                Value next = iterator.next().bindable();
                 if(next == Value.EOL) {
                     continue;
                 }
                 String variable = next.boundVariable;
                 next.bindTo("_");
-                int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
+                item.set(next);
+                index.set(new NumericValue(i));
+                c.setVariable("_", item);
+                c.setVariable("_i", index);
                 if (!expr.evalValue(c, Context.BOOLEAN).getBoolean())
                 {
                     result = LazyValue.FALSE;
@@ -423,18 +443,21 @@ public class Loops
             //scoping
             LazyValue defaultVal = c.getVariable("_");
             LazyValue iterVal = c.getVariable("_i");
+            LazyValue.Binding item = new LazyValue.Binding("_");
+            LazyValue.Binding index = new LazyValue.Binding("_i");
             int successCount = 0;
             for (int i = 0; iterator.hasNext(); i++)
             {
-                Value next = iterator.next();
+                Value next = iterator.next().bindable();
                 if(next == Value.EOL) {
                     continue;
                 }
                 String variable = next.boundVariable;
                 next.bindTo("_");
-                int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
+                item.set(next);
+                index.set(new NumericValue(i));
+                c.setVariable("_", item);
+                c.setVariable("_i", index);
                 Value result = Value.FALSE;
                 try
                 {
@@ -497,20 +520,24 @@ public class Loops
             LazyValue defaultVal = c.getVariable("_");
             LazyValue accumulatorVal = c.getVariable("_a");
             LazyValue iterVal = c.getVariable("_i");
+            LazyValue.Binding accumulator = new LazyValue.Binding("_a");
+            LazyValue.Binding item = new LazyValue.Binding("_");
+            LazyValue.Binding index = new LazyValue.Binding("_i");
 
             for (int i = 0; iterator.hasNext(); i++)
             {
-                Value next = iterator.next();
+                Value next = iterator.next().bindable();
                 if(next == Value.EOL) {
                     continue;
                 }
                 String variable = next.boundVariable;
                 next.bindTo("_");
-                Value promiseWontChangeYou = acc;
-                int seriously = i;
-                c.setVariable("_a", (cc, tt) -> promiseWontChangeYou.bindTo("_a"));
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
+                accumulator.set(acc);
+                c.setVariable("_a", accumulator);
+                item.set(next);
+                index.set(new NumericValue(i));
+                c.setVariable("_", item);
+                c.setVariable("_i", index);
                 try
                 {
                     acc = expr.evalValue(c, t);
@@ -538,5 +565,187 @@ public class Loops
             Value hopeItsEnoughPromise = acc;
             return (cc, tt) -> hopeItsEnoughPromise;
         });
+
+        // lazy_map(list or iterator, expr) => iterator
+        // like map, but runs expr for each element only when it is read from the returned iterator
+        expression.addLazyFunction("lazy_map", 2, (c, t, lv) ->
+        {
+            Value rval = lv.get(0).evalValue(c, Context.NONE);
+            if (rval.isNull())
+            {
+                return ListValue.lazyEmpty();
+            }
+            if (!(rval instanceof final AbstractListValue alv))
+            {
+                throw new InternalExpressionException("First argument of 'lazy_map' function should be a list or iterator");
+            }
+            Value ret = new Pipeline(c, alv, lv.get(1))
+            {
+                @Override
+                protected Value process(Value element, Value result)
+                {
+                    return result;
+                }
+
+                @Override
+                protected Value processExit(Value element, Value retval)
+                {
+                    return retval;
+                }
+            };
+            return (cc, tt) -> ret;
+        });
+
+        // lazy_filter(list or iterator, expr) => iterator
+        // like filter, but checks elements only when they are read from the returned iterator
+        expression.addLazyFunction("lazy_filter", 2, (c, t, lv) ->
+        {
+            Value rval = lv.get(0).evalValue(c, Context.NONE);
+            if (rval.isNull())
+            {
+                return ListValue.lazyEmpty();
+            }
+            if (!(rval instanceof final AbstractListValue alv))
+            {
+                throw new InternalExpressionException("First argument of 'lazy_filter' function should be a list or iterator");
+            }
+            Value ret = new Pipeline(c, alv, lv.get(1))
+            {
+                @Override
+                protected Context.Type type()
+                {
+                    return Context.BOOLEAN;
+                }
+
+                @Override
+                protected Value process(Value element, Value result)
+                {
+                    return result.getBoolean() ? element : null;
+                }
+
+                @Override
+                protected Value processExit(Value element, Value retval)
+                {
+                    return retval.getBoolean() ? element : null;
+                }
+            };
+            return (cc, tt) -> ret;
+        });
+    }
+
+    /**
+     * Iterator running an expression for elements of another list or iterator only as they are read, so chained
+     * lazy calls pull elements one by one from the source without creating lists in between. The expression runs in
+     * the context the iterator was created in, with '_' and '_i' bound like in 'map'.
+     */
+    private abstract static class Pipeline extends LazyListValue
+    {
+        private final Context context;
+        private final AbstractListValue source;
+        private final LazyValue expr;
+        private final LazyValue.Binding item = new LazyValue.Binding("_");
+        private final LazyValue.Binding index = new LazyValue.Binding("_i");
+        private Iterator<Value> iterator;
+        private int position;
+        @Nullable
+        private Value pending;
+        private boolean finished;
+
+        private Pipeline(Context context, AbstractListValue source, LazyValue expr)
+        {
+            this.context = context;
+            this.source = source;
+            this.expr = expr;
+            this.iterator = source.iterator();
+        }
+
+        protected Context.Type type()
+        {
+            return Context.NONE;
+        }
+
+        /**
+         * @return value to pass on for the element given the expression result, or null to skip the element
+         */
+        @Nullable
+        protected abstract Value process(Value element, Value result);
+
+        /**
+         * @return value to pass on for the element when expression called 'break' or 'continue' with a value,
+         * or null to skip the element
+         */
+        @Nullable
+        protected abstract Value processExit(Value element, Value retval);
+
+        private void advance()
+        {
+            while (pending == null && !finished && iterator.hasNext())
+            {
+                Value next = iterator.next().bindable();
+                if (next == Value.EOL)
+                {
+                    continue;
+                }
+                String variable = next.boundVariable;
+                next.bindTo("_");
+                LazyValue defaultVal = context.getVariable("_");
+                LazyValue iterVal = context.getVariable("_i");
+                item.set(next);
+                index.set(new NumericValue(position++));
+                context.setVariable("_", item);
+                context.setVariable("_i", index);
+                try
+                {
+                    pending = process(next, expr.evalValue(context, type()));
+                }
+                catch (BreakStatement | ContinueStatement stmt)
+                {
+                    if (stmt.retval != null)
+                    {
+                        pending = processExit(next, stmt.retval);
+                    }
+                    if (stmt instanceof BreakStatement)
+                    {
+                        finished = true;
+                    }
+                }
+                finally
+                {
+                    next.boundVariable = variable;
+                    context.setVariable("_", defaultVal);
+                    context.setVariable("_i", iterVal);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            advance();
+            return pending != null;
+        }
+
+        @Override
+        public Value next()
+        {
+            advance();
+            if (pending == null)
+            {
+                return Value.EOL;
+            }
+            Value next = pending;
+            pending = null;
+            return next;
+        }
+
+        @Override
+        public void reset()
+        {
+            source.fatality();
+            iterator = source.iterator();
+            position = 0;
+            pending = null;
+            finished = false;
+        }
     }
 }
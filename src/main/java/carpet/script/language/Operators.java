@@ -114,7 +114,7 @@ public class Operators
             {
                 accumulator = accumulator & NumericValue.asNumber(v).getLong();
             }
-            return new NumericValue(accumulator);
+            return NumericValue.shared(accumulator);
         });
 
         expression.addFunction("bitwise_xor", lv -> {
@@ -128,7 +128,7 @@ public class Operators
             {
                 accumulator = accumulator ^ NumericValue.asNumber(v).getLong();
             }
-            return new NumericValue(accumulator);
+            return NumericValue.shared(accumulator);
         });
 
         expression.addFunction("bitwise_or", lv -> {
@@ -142,7 +142,7 @@ public class Operators
             {
                 accumulator = accumulator | NumericValue.asNumber(v).getLong();
             }
-            return new NumericValue(accumulator);
+            return NumericValue.shared(accumulator);
         });
 
         // lazy cause RHS is only conditional
@@ -341,7 +341,7 @@ public class Operators
         });
 
         // lazy cause of assignment which is non-trivial
-        expression.addLazyBinaryOperator("=", "assign", precedence.get("assign=<>"), false, false, t -> Context.Type.LVALUE, (c, t, lv1, lv2) ->
+        expression.addLazyBinaryOperatorWithDelegation("=", "assign", precedence.get("assign=<>"), false, false, t -> Context.Type.LVALUE, (c, t, e, tok, lv1, lv2) ->
         {
             Value v1 = lv1.evalValue(c, Context.LVALUE);
             Value v2 = lv2.evalValue(c);
@@ -367,7 +367,7 @@ public class Operators
                 {
                     String lname = li.next().getVariable();
                     Value vval = ri.next().reboundedTo(lname);
-                    expression.setAnyVariable(c, lname, (cc, tt) -> vval);
+                    e.setAnyVariable(c, lname, (cc, tt) -> vval);
                 }
                 return (cc, tt) -> Value.TRUE;
             }
@@ -389,12 +389,12 @@ public class Operators
             String varname = v1.getVariable();
             Value copy = v2.reboundedTo(varname);
             LazyValue boundedLHS = (cc, tt) -> copy;
-            expression.setAnyVariable(c, varname, boundedLHS);
+            e.setAnyVariable(c, varname, boundedLHS);
             return boundedLHS;
         });
 
         // lazy due to assignment
-        expression.addLazyBinaryOperator("+=", "append", precedence.get("assign=<>"), false, false, t -> Context.Type.LVALUE, (c, t, lv1, lv2) ->
+        expression.addLazyBinaryOperatorWithDelegation("+=", "append", precedence.get("assign=<>"), false, false, t -> Context.Type.LVALUE, (c, t, e, tok, lv1, lv2) ->
         {
             Value v1 = lv1.evalValue(c, Context.LVALUE);
             Value v2 = lv2.evalValue(c);
@@ -420,8 +420,8 @@ public class Operators
                 {
                     Value lval = li.next();
                     String lname = lval.getVariable();
-                    Value result = lval.add(ri.next()).bindTo(lname);
-                    expression.setAnyVariable(c, lname, (cc, tt) -> result);
+                    Value result = lval.add(ri.next()).reboundedTo(lname);
+                    e.setAnyVariable(c, lname, (cc, tt) -> result);
                 }
                 return (cc, tt) -> Value.TRUE;
             }
@@ -456,15 +456,17 @@ public class Operators
             }
             else
             {
-                Value result = v1.add(v2).bindTo(varname);
+                Value result = v1.add(v2).reboundedTo(varname);
                 boundedLHS = (cc, tt) -> result;
             }
-            expression.setAnyVariable(c, varname, boundedLHS);
+            e.setAnyVariable(c, varname, boundedLHS);
             return boundedLHS;
         });
 
-        expression.addBinaryContextOperator("<>", "swap", precedence.get("assign=<>"), false, false, false, (c, t, v1, v2) ->
+        expression.addLazyBinaryOperatorWithDelegation("<>", "swap", precedence.get("assign=<>"), false, false, (c, t, e, tok, lv1, lv2) ->
         {
+            Value v1 = lv1.evalValue(c, Context.NONE);
+            Value v2 = lv2.evalValue(c, Context.NONE);
             if (v1 instanceof final ListValue.ListConstructorValue lcv1 && v2 instanceof final ListValue.ListConstructorValue lcv2)
             {
                 List<Value> ll = lcv1.getItems();
@@ -495,10 +497,10 @@ public class Operators
                     String rname = rval.getVariable();
                     lval.reboundedTo(rname);
                     rval.reboundedTo(lname);
-                    expression.setAnyVariable(c, lname, (cc, tt) -> rval);
-                    expression.setAnyVariable(c, rname, (cc, tt) -> lval);
+                    e.setAnyVariable(c, lname, (cc, tt) -> rval);
+                    e.setAnyVariable(c, rname, (cc, tt) -> lval);
                 }
-                return Value.TRUE;
+                return (cc, tt) -> Value.TRUE;
             }
             v1.assertAssignable();
             v2.assertAssignable();
@@ -506,9 +508,9 @@ public class Operators
             String rvalvar = v2.getVariable();
             Value lval = v2.reboundedTo(lvalvar);
             Value rval = v1.reboundedTo(rvalvar);
-            expression.setAnyVariable(c, lvalvar, (cc, tt) -> lval);
-            expression.setAnyVariable(c, rvalvar, (cc, tt) -> rval);
-            return lval;
+            e.setAnyVariable(c, lvalvar, (cc, tt) -> lval);
+            e.setAnyVariable(c, rvalvar, (cc, tt) -> rval);
+            return (cc, tt) -> lval;
         });
 
         expression.addUnaryOperator("-", "opposite", false, v -> NumericValue.asNumber(v).opposite());
@@ -420,15 +420,15 @@ public class Sys
             return (cc, tt) -> res;
         });
 
-        expression.addContextFunction("var", 1, (c, t, lv) ->
-                expression.getOrSetAnyVariable(c, lv.get(0).getString()).evalValue(c));
+        expression.addFunctionWithDelegation("var", 1, false, false, (c, t, expr, tok, lv) ->
+                expr.getOrSetAnyVariable(c, lv.get(0).getString()).evalValue(c));
 
-        expression.addContextFunction("undef", 1, (c, t, lv) ->
+        expression.addFunctionWithDelegation("undef", 1, false, false, (c, t, expr, tok, lv) ->
         {
             Value remove = lv.get(0);
             if (remove instanceof FunctionValue)
             {
-                c.host.delFunction(expression.module, remove.getString());
+                c.host.delFunction(expr.module, remove.getString());
                 return Value.NULL;
             }
             String varname = remove.getString();
@@ -439,10 +439,10 @@ public class Sys
             }
             if (isPrefix)
             {
-                c.host.delFunctionWithPrefix(expression.module, varname);
+                c.host.delFunctionWithPrefix(expr.module, varname);
                 if (varname.startsWith("global_"))
                 {
-                    c.host.delGlobalVariableWithPrefix(expression.module, varname);
+                    c.host.delGlobalVariableWithPrefix(expr.module, varname);
                 }
                 else if (!varname.startsWith("_"))
                 {
@@ -451,10 +451,10 @@ public class Sys
             }
             else
             {
-                c.host.delFunction(expression.module, varname);
+                c.host.delFunction(expr.module, varname);
                 if (varname.startsWith("global_"))
                 {
-                    c.host.delGlobalVariable(expression.module, varname);
+                    c.host.delGlobalVariable(expr.module, varname);
                 }
                 else if (!varname.startsWith("_"))
                 {
@@ -465,13 +465,13 @@ public class Sys
         });
 
         //deprecate
-        expression.addContextFunction("vars", 1, (c, t, lv) ->
+        expression.addFunctionWithDelegation("vars", 1, false, false, (c, t, expr, tok, lv) ->
         {
             String prefix = lv.get(0).getString();
             List<Value> values = new ArrayList<>();
             if (prefix.startsWith("global"))
             {
-                c.host.globalVariableNames(expression.module, s -> s.startsWith(prefix)).forEach(s -> values.add(new StringValue(s)));
+                c.host.globalVariableNames(expr.module, s -> s.startsWith(prefix)).forEach(s -> values.add(new StringValue(s)));
             }
             else
             {
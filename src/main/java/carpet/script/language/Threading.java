@@ -2,14 +2,29 @@ package carpet.script.language;
 
 import carpet.script.Context;
 import carpet.script.Expression;
+import carpet.script.TaskPool;
 import carpet.script.argument.FunctionArgument;
 import carpet.script.exception.ExitStatement;
 import carpet.script.exception.InternalExpressionException;
+import carpet.script.value.AbstractListValue;
 import carpet.script.value.BooleanValue;
+import carpet.script.value.FunctionValue;
+import carpet.script.value.ListValue;
+import carpet.script.value.MapValue;
 import carpet.script.value.NumericValue;
+import carpet.script.value.StringValue;
 import carpet.script.value.ThreadValue;
 import carpet.script.value.Value;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+
 public class Threading
 {
     public static void apply(Expression expression)
@@ -20,7 +35,7 @@ public class Threading
             {
                 throw new InternalExpressionException("'task' requires at least function to call as a parameter");
             }
-            FunctionArgument functionArgument = FunctionArgument.findIn(c, expression.module, lv, 0, false, true);
+            FunctionArgument functionArgument = FunctionArgument.findIn(c, expr.module, lv, 0, false, true);
             ThreadValue thread = new ThreadValue(Value.NULL, functionArgument.function, expr, tok, c, functionArgument.checkedArgs());
             Thread.yield();
             return thread;
@@ -33,16 +48,99 @@ public class Threading
                 throw new InternalExpressionException("'task' requires at least function to call as a parameter");
             }
             Value queue = lv.get(0);
-            FunctionArgument functionArgument = FunctionArgument.findIn(c, expression.module, lv, 1, false, true);
+            FunctionArgument functionArgument = FunctionArgument.findIn(c, expr.module, lv, 1, false, true);
             ThreadValue thread = new ThreadValue(queue, functionArgument.function, expr, tok, c, functionArgument.checkedArgs());
             Thread.yield();
             return thread;
         });
 
 
+        expression.addFunctionWithDelegation("parallel_map", -1, false, false, (c, t, expr, tok, lv) ->
+        {
+            if (lv.size() < 2)
+            {
+                throw new InternalExpressionException("'parallel_map' requires a list and a function to call");
+            }
+            List<Value> items = listArgument(lv.get(0), "parallel_map");
+            FunctionArgument functionArgument = FunctionArgument.findIn(c, expr.module, lv, 1, false, false);
+            FunctionValue function = pureFunction(functionArgument.function, "parallel_map");
+            List<Value> extraArgs = functionArgument.args;
+            function.checkArgs(extraArgs.size() + 1);
+            List<List<Value>> mapped = forChunks(c, items, (worker, chunk) -> {
+                FunctionValue workerFunction = function.withCopiedOuterState();
+                List<Value> workerArgs = copies(extraArgs);
+                List<Value> results = new ArrayList<>(chunk.size());
+                for (Value item : chunk)
+                {
+                    List<Value> args = new ArrayList<>(workerArgs.size() + 1);
+                    args.add(item);
+                    args.addAll(workerArgs);
+                    results.add(workerFunction.callInContext(worker, Context.NONE, args).evalValue(worker));
+                }
+                return results;
+            });
+            List<Value> results = new ArrayList<>(items.size());
+            mapped.forEach(results::addAll);
+            return ListValue.wrap(results);
+        });
+
+        expression.addFunctionWithDelegation("parallel_reduce", 3, false, false, (c, t, expr, tok, lv) ->
+        {
+            List<Value> items = listArgument(lv.get(0), "parallel_reduce");
+            FunctionArgument functionArgument = FunctionArgument.findIn(c, expr.module, lv, 1, false, false);
+            FunctionValue function = pureFunction(functionArgument.function, "parallel_reduce");
+            function.checkArgs(2);
+            Value initial = lv.get(2);
+            List<Value> partials = forChunks(c, items, (worker, chunk) -> {
+                FunctionValue workerFunction = function.withCopiedOuterState();
+                Value accumulator = initial.deepcopy();
+                for (Value item : chunk)
+                {
+                    accumulator = workerFunction.callInContext(worker, Context.NONE, List.of(accumulator, item)).evalValue(worker);
+                }
+                return accumulator;
+            });
+            // partial results are combined in list order, so the function only needs to be associative
+            Value result = partials.get(0);
+            for (int i = 1; i < partials.size(); i++)
+            {
+                result = function.callInContext(c, Context.NONE, List.of(result, partials.get(i))).evalValue(c);
+            }
+            return result;
+        });
+
         expression.addContextFunction("task_count", -1, (c, t, lv) ->
                 (!lv.isEmpty()) ? new NumericValue(c.host.taskCount(lv.get(0))) : new NumericValue(c.host.taskCount()));
 
+        expression.addContextFunction("task_executor", -1, (c, t, lv) ->
+        {
+            if (lv.size() < 2 || lv.size() > 4)
+            {
+                throw new InternalExpressionException("'task_executor' requires an executor, its kind, and optionally number of threads and queue size");
+            }
+            TaskPool.Kind kind = TaskPool.Kind.fromString(lv.get(1).getString());
+            int threads = lv.size() > 2 ? NumericValue.asNumber(lv.get(2)).getInt() : TaskPool.DEFAULT_THREADS;
+            int queue = lv.size() > 3 ? NumericValue.asNumber(lv.get(3)).getInt() : TaskPool.DEFAULT_QUEUE;
+            if (threads < 1 || queue < 1)
+            {
+                throw new InternalExpressionException("'task_executor' requires positive number of threads and queue size");
+            }
+            c.host.configureExecutor(lv.get(0), kind, threads, queue);
+            return Value.NULL;
+        });
+
+        expression.addContextFunction("task_stats", -1, (c, t, lv) ->
+        {
+            if (!lv.isEmpty())
+            {
+                TaskPool executor = c.host.getExistingExecutor(lv.get(0));
+                return executor == null ? Value.NULL : executorStats(executor);
+            }
+            Map<Value, Value> stats = new HashMap<>();
+            c.host.getExecutors().forEach((pool, executor) -> stats.put(pool, executorStats(executor)));
+            return MapValue.wrap(stats);
+        });
+
         expression.addUnaryFunction("task_value", v ->
         {
             if (!(v instanceof final ThreadValue tv))
@@ -188,4 +286,96 @@ public class Threading
             return (cc, tt) -> BooleanValue.of(ret);
         });
     }
+
+    private static List<Value> listArgument(Value value, String name)
+    {
+        if (value.isNull())
+        {
+            return List.of();
+        }
+        if (!(value instanceof AbstractListValue list))
+        {
+            throw new InternalExpressionException("First argument of '" + name + "' should be a list or an iterator");
+        }
+        return list.unpack();
+    }
+
+    public static FunctionValue pureFunction(FunctionValue function, String name)
+    {
+        if (!function.hasPureBody())
+        {
+            throw new InternalExpressionException("Function " + function.getPrettyString() + " can't be used with '" + name
+                    + "', it can only use its own variables and built-in functions without side effects");
+        }
+        return function;
+    }
+
+    /**
+     * @return deep copies of the values, for a worker that shouldn't share them with others
+     */
+    public static List<Value> copies(List<Value> values)
+    {
+        List<Value> copies = new ArrayList<>(values.size());
+        for (Value value : values)
+        {
+            copies.add(value.deepcopy());
+        }
+        return copies;
+    }
+
+    /**
+     * Splits items into chunks processed in the common fork-join pool, each with its own copy of the context
+     *
+     * @return results of each chunk, in order of the chunks
+     */
+    public static <I, T> List<T> forChunks(Context c, List<I> items, BiFunction<Context, List<I>, T> work)
+    {
+        int chunks = Math.min(items.size(), ForkJoinPool.getCommonPoolParallelism() * 4);
+        if (chunks <= 1)
+        {
+            return List.of(work.apply(c, items));
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++)
+        {
+            List<I> chunk = items.subList(items.size() * i / chunks, items.size() * (i + 1) / chunks);
+            Context worker = c.recreate();
+            futures.add(CompletableFuture.supplyAsync(() -> work.apply(worker, chunk), ForkJoinPool.commonPool()));
+        }
+        List<T> results = new ArrayList<>(chunks);
+        try
+        {
+            for (CompletableFuture<T> future : futures)
+            {
+                results.add(future.join());
+            }
+        }
+        catch (CompletionException exc)
+        {
+            futures.forEach(future -> future.cancel(false));
+            if (exc.getCause() instanceof RuntimeException cause)
+            {
+                throw cause;
+            }
+            if (exc.getCause() instanceof Error cause)
+            {
+                throw cause;
+            }
+            throw exc;
+        }
+        return results;
+    }
+
+    private static Value executorStats(TaskPool executor)
+    {
+        Map<Value, Value> stats = new HashMap<>();
+        stats.put(StringValue.of("kind"), StringValue.of(executor.kind.getName()));
+        stats.put(StringValue.of("active"), NumericValue.of(executor.activeCount()));
+        stats.put(StringValue.of("queued"), NumericValue.of(executor.queuedCount()));
+        stats.put(StringValue.of("completed"), NumericValue.of(executor.completedCount()));
+        stats.put(StringValue.of("rejected"), NumericValue.of(executor.rejectedCount()));
+        stats.put(StringValue.of("average_wait"), new NumericValue(executor.averageWait()));
+        stats.put(StringValue.of("average_time"), new NumericValue(executor.averageTime()));
+        return MapValue.wrap(stats);
+    }
 }
@@ -0,0 +1,141 @@
+package carpet.script.utils;
+
+import carpet.script.CarpetScriptServer;
+import carpet.script.external.Carpet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.ProblemReporter;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.storage.TagValueInput;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Collects block changes done with {@code set} inside {@code batch_edits} on the current thread, and applies them
+ * in a single main thread task, section by section, instead of docking each block change separately.
+ */
+public class BlockEditBuffer
+{
+    private static final ThreadLocal<BlockEditBuffer> current = new ThreadLocal<>();
+
+    private record Edit(BlockPos pos, BlockState state, @Nullable CompoundTag data, boolean skipUpdates)
+    {
+    }
+
+    private final MinecraftServer server;
+    private final Map<ServerLevel, Long2ObjectLinkedOpenHashMap<List<Edit>>> sections = new LinkedHashMap<>();
+    private int size = 0;
+
+    private BlockEditBuffer(MinecraftServer server)
+    {
+        this.server = server;
+    }
+
+    /**
+     * @return buffer collecting block changes on this thread, or null if block changes should be applied right away
+     */
+    @Nullable
+    public static BlockEditBuffer current()
+    {
+        return current.get();
+    }
+
+    /**
+     * Runs the code collecting all block changes into one buffer, then applies them all. If a buffer is already
+     * collecting changes on this thread, the changes go to that buffer instead.
+     */
+    public static <T> T collect(MinecraftServer server, Supplier<T> code)
+    {
+        if (current.get() != null)
+        {
+            return code.get();
+        }
+        BlockEditBuffer buffer = new BlockEditBuffer(server);
+        current.set(buffer);
+        try
+        {
+            return code.get();
+        }
+        finally
+        {
+            current.remove();
+            // changes made before an error are kept, same as without the buffer
+            buffer.commit();
+        }
+    }
+
+    public void add(ServerLevel level, BlockPos pos, BlockState state, @Nullable CompoundTag data)
+    {
+        sections.computeIfAbsent(level, l -> new Long2ObjectLinkedOpenHashMap<>())
+                .computeIfAbsent(SectionPos.asLong(pos), s -> new ArrayList<>())
+                .add(new Edit(pos.immutable(), state, data, Carpet.getImpendingFillSkipUpdates().get()));
+        size++;
+    }
+
+    private void commit()
+    {
+        if (size == 0)
+        {
+            return;
+        }
+        server.executeBlocking(() ->
+        {
+            ThreadLocal<Boolean> skipUpdates = Carpet.getImpendingFillSkipUpdates();
+            boolean previous = skipUpdates.get();
+            try
+            {
+                sections.forEach((level, levelSections) -> levelSections.values().forEach(edits -> {
+                    for (Edit edit : edits)
+                    {
+                        skipUpdates.set(previous || edit.skipUpdates());
+                        setBlock(level, edit.pos(), edit.state(), edit.data());
+                    }
+                }));
+            }
+            finally
+            {
+                skipUpdates.set(previous);
+            }
+        });
+    }
+
+    /**
+     * Sets the block with optional block entity data, like the {@code set} function does. Needs to run on the main thread.
+     *
+     * @return whether the block or its data has changed
+     */
+    public static boolean setBlock(ServerLevel world, BlockPos targetPos, BlockState state, @Nullable CompoundTag data)
+    {
+        boolean success = world.setBlock(targetPos, state, Block.UPDATE_CLIENTS | Block.UPDATE_SKIP_BLOCK_ENTITY_SIDEEFFECTS);
+        if (data != null)
+        {
+            BlockEntity be = world.getBlockEntity(targetPos);
+            if (be != null)
+            {
+                CompoundTag destTag = data.copy();
+                destTag.putInt("x", targetPos.getX());
+                destTag.putInt("y", targetPos.getY());
+                destTag.putInt("z", targetPos.getZ());
+                try (final ProblemReporter.ScopedCollector reporter = new ProblemReporter.ScopedCollector(be.problemPath(), CarpetScriptServer.LOG))
+                {
+                    be.loadWithComponents(TagValueInput.create(reporter, world.registryAccess(), destTag));
+                }
+                be.setChanged();
+                success = true;
+            }
+        }
+        return success;
+    }
+}
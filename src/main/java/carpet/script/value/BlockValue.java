@@ -1,6 +1,7 @@
 package carpet.script.value;
 
 import carpet.script.CarpetContext;
+import carpet.script.ParseCache;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.ThrowStatement;
 import carpet.script.exception.Throwables;
@@ -10,7 +11,6 @@ import com.mojang.brigadier.exceptions.CommandSyntaxException;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -19,7 +19,6 @@ import net.minecraft.commands.arguments.blocks.BlockStateParser;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.core.Direction.Axis;
-import net.minecraft.core.GlobalPos;
 import net.minecraft.core.Registry;
 import net.minecraft.core.RegistryAccess;
 import net.minecraft.core.registries.Registries;
@@ -50,6 +49,7 @@ public class BlockValue extends Value
     private final BlockPos pos;
     private final ServerLevel world;
     private CompoundTag data;
+    private int hash;
 
     // we only care for null values a few times, most of the time we would assume its all present
     public static final BlockValue NONE = new BlockValue(Blocks.AIR.defaultBlockState(), null, BlockPos.ZERO, null);
@@ -60,17 +60,23 @@ public class BlockValue extends Value
         return new BlockValue(null, c.level(), pos);
     }
 
-    private static final Map<String, BlockValue> bvCache = new HashMap<>();
+    private static final ParseCache<BlockValue> bvCache = ParseCache.create("blocks", 10000);
 
     public static BlockValue fromString(String str, ServerLevel level)
+    {
+        BlockValue bv = bvCache.get(str, s -> parseBlock(s, level));
+        if (bv == null)
+        {
+            throw new ThrowStatement(str, Throwables.UNKNOWN_BLOCK);
+        }
+        return bv;
+    }
+
+    @Nullable
+    private static BlockValue parseBlock(String str, ServerLevel level)
     {
         try
         {
-            BlockValue bv = bvCache.get(str); // [SCARY SHIT] persistent caches over server reloads
-            if (bv != null)
-            {
-                return bv;
-            }
             BlockStateParser.BlockResult foo = BlockStateParser.parseForBlock(level.registryAccess().lookupOrThrow(Registries.BLOCK), new StringReader(str), true);
             if (foo.blockState() != null)
             {
@@ -79,19 +85,13 @@ public class BlockValue extends Value
                 {
                     bd = new CompoundTag();
                 }
-                bv = new BlockValue(foo.blockState(), level, null, bd);
-                if (bvCache.size() > 10000)
-                {
-                    bvCache.clear();
-                }
-                bvCache.put(str, bv);
-                return bv;
+                return new BlockValue(foo.blockState(), level, null, bd);
             }
         }
         catch (CommandSyntaxException ignored)
         {
         }
-        throw new ThrowStatement(str, Throwables.UNKNOWN_BLOCK);
+        return null;
     }
 
     public static BlockPos locateBlockPos(CarpetContext c, int xpos, int ypos, int zpos)
@@ -221,12 +221,28 @@ public class BlockValue extends Value
         return new BlockValue(blockState, world, pos, data);
     }
 
+    @Override
+    public boolean equals(Object o)
+    {
+        // blocks are compared by their names, which come from the same registry
+        if (o instanceof BlockValue other)
+        {
+            return getBlockState().getBlock() == other.getBlockState().getBlock();
+        }
+        return super.equals(o);
+    }
+
     @Override
     public int hashCode()
     {
-        return pos != null
-                ? GlobalPos.of(world.dimension(), pos).hashCode()
-                : ("b" + getString()).hashCode();
+        // has to match equals, so same blocks hash the same wherever they are, and the same as their names
+        int h = hash;
+        if (h == 0)
+        {
+            h = stringHash(getString());
+            hash = h;
+        }
+        return h;
     }
 
     public BlockPos getPos()
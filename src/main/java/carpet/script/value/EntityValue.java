@@ -5,6 +5,7 @@ import carpet.script.utils.Tracer;
 import carpet.script.CarpetContext;
 import carpet.script.CarpetScriptServer;
 import carpet.script.EntityEventsGroup;
+import carpet.script.ParseCache;
 import carpet.script.argument.Vector3Argument;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.external.Carpet;
@@ -23,10 +24,17 @@ import net.minecraft.core.Holder;
 import net.minecraft.core.HolderSet;
 import net.minecraft.core.Registry;
 import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.UUIDUtil;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.ByteTag;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.DoubleTag;
+import net.minecraft.nbt.FloatTag;
+import net.minecraft.nbt.IntArrayTag;
+import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.network.protocol.game.ClientboundEntityPositionSyncPacket;
 import net.minecraft.network.protocol.game.ClientboundSetExperiencePacket;
 import net.minecraft.network.protocol.game.ClientboundSetHeldSlotPacket;
@@ -93,7 +101,10 @@ import java.util.UUID;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.BiPredicate;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -114,19 +125,13 @@ public class EntityValue extends Value
         return e == null ? Value.NULL : new EntityValue(e);
     }
 
-    private static final Map<String, EntitySelector> selectorCache = new HashMap<>();
+    private static final ParseCache<EntitySelector> selectorCache = ParseCache.create("entity selectors", 1024);
 
     public static Collection<? extends Entity> getEntitiesFromSelector(CommandSourceStack source, String selector)
     {
         try
         {
-            EntitySelector entitySelector = selectorCache.get(selector);
-            if (entitySelector != null)
-            {
-                return entitySelector.findEntities(source.withMaximumPermission(LevelBasedPermissionSet.OWNER));
-            }
-            entitySelector = new EntitySelectorParser(new StringReader(selector), true).parse();
-            selectorCache.put(selector, entitySelector);
+            EntitySelector entitySelector = selectorCache.get(selector, EntityValue::parseSelector);
             return entitySelector.findEntities(source.withMaximumPermission(LevelBasedPermissionSet.OWNER));
         }
         catch (CommandSyntaxException e)
@@ -135,6 +140,18 @@ public class EntityValue extends Value
         }
     }
 
+    private static EntitySelector parseSelector(String selector)
+    {
+        try
+        {
+            return new EntitySelectorParser(new StringReader(selector), true).parse();
+        }
+        catch (CommandSyntaxException e)
+        {
+            throw new InternalExpressionException("Cannot select entities from " + selector);
+        }
+    }
+
     public Entity getEntity()
     {
         if (entity instanceof ServerPlayer serverPlayer && Vanilla.ServerPlayer_isInvalidEntityObject(serverPlayer))
@@ -868,6 +885,14 @@ public class EntityValue extends Value
         });
 
         put("nbt", (e, a) -> {
+            if (a != null)
+            {
+                CompoundTag partial = partialNbt(e, a.getString());
+                if (partial != null)
+                {
+                    return NBTSerializableValue.view(partial).get(a);
+                }
+            }
             try (final ProblemReporter.ScopedCollector reporter = new ProblemReporter.ScopedCollector(e.problemPath(), CarpetScriptServer.LOG)) {
                 final TagValueOutput output = TagValueOutput.createWithContext(reporter, e.registryAccess());
                 e.saveWithoutId(output);
@@ -885,6 +910,60 @@ public class EntityValue extends Value
         });
     }};
 
+    /**
+     * Top level entity data that can be read without saving the entire entity, in the same format as the game saves it
+     */
+    private static final Map<String, Function<Entity, @Nullable Tag>> partialNbtReaders = Map.of(
+            "Pos", e -> e.getVehicle() != null
+                    ? doubleList(e.getVehicle().getX(), e.getY(), e.getVehicle().getZ())
+                    : doubleList(e.getX(), e.getY(), e.getZ()),
+            "Motion", e -> {
+                Vec3 motion = e.getDeltaMovement();
+                return doubleList(motion.x, motion.y, motion.z);
+            },
+            "Rotation", e -> {
+                ListTag rotation = new ListTag();
+                rotation.add(FloatTag.valueOf(e.getYRot()));
+                rotation.add(FloatTag.valueOf(e.getXRot()));
+                return rotation;
+            },
+            "OnGround", e -> ByteTag.valueOf(e.onGround()),
+            "UUID", e -> new IntArrayTag(UUIDUtil.uuidToIntArray(e.getUUID())),
+            "Health", e -> e instanceof LivingEntity living ? FloatTag.valueOf(living.getHealth()) : null
+    );
+    private static final Pattern NBT_PATH_ROOT = Pattern.compile("([A-Za-z_][A-Za-z0-9_]*)(?:[.\\[].*)?");
+
+    /**
+     * @return tag with only the top level key the path starts with, or null if the entity needs to be saved entirely
+     */
+    @Nullable
+    private static CompoundTag partialNbt(Entity e, String path)
+    {
+        Matcher matcher = NBT_PATH_ROOT.matcher(path);
+        if (!matcher.matches())
+        {
+            return null;
+        }
+        Function<Entity, @Nullable Tag> reader = partialNbtReaders.get(matcher.group(1));
+        Tag tag = reader == null ? null : reader.apply(e);
+        if (tag == null)
+        {
+            return null;
+        }
+        CompoundTag result = new CompoundTag();
+        result.put(matcher.group(1), tag);
+        return result;
+    }
+
+    private static ListTag doubleList(double x, double y, double z)
+    {
+        ListTag list = new ListTag();
+        list.add(DoubleTag.valueOf(x));
+        list.add(DoubleTag.valueOf(y));
+        list.add(DoubleTag.valueOf(z));
+        return list;
+    }
+
     public void set(String what, @Nullable Value toWhat)
     {
         if (!(featureModifiers.containsKey(what)))
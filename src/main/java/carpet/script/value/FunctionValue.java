@@ -4,8 +4,11 @@ import carpet.script.CarpetScriptServer;
 import carpet.script.Context;
 import carpet.script.Expression;
 import carpet.script.Fluff;
+import carpet.script.FrameLayout;
+import carpet.script.FunctionAnalysis;
 import carpet.script.LazyValue;
 import carpet.script.Module;
+import carpet.script.ScriptCompiler;
 import carpet.script.Token;
 import carpet.script.exception.BreakStatement;
 import carpet.script.exception.ContinueStatement;
@@ -14,9 +17,13 @@ import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.ReturnStatement;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import net.minecraft.core.RegistryAccess;
@@ -30,14 +37,20 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
     private final Expression expression;
     private final Token token;
     private final String name;
-    private final LazyValue body;
+    private final ScriptCompiler.FunctionBody body;
     private Map<String, LazyValue> outerState;
     private final List<String> args;
     private final String varArgs;
+    @Nullable
+    private final FrameLayout frame;
+    private final int[] argSlots;
     private static long variantCounter = 1;
     private long variant;
+    private boolean @Nullable [] usedArguments;
+    @Nullable
+    private Boolean pureBody;
 
-    private FunctionValue(Expression expression, Token token, String name, LazyValue body, List<String> args, String varArgs)
+    private FunctionValue(Expression expression, Token token, String name, ScriptCompiler.FunctionBody body, List<String> args, String varArgs, @Nullable FrameLayout frame)
     {
         this.expression = expression;
         this.token = token;
@@ -46,21 +59,40 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         this.args = args;
         this.varArgs = varArgs;
         this.outerState = null;
+        this.frame = frame;
+        this.argSlots = resolveArgSlots(frame, args);
         variant = 0L;
     }
 
     public FunctionValue(Expression expression, Token token, String name, LazyValue body, List<String> args, String varArgs, Map<String, LazyValue> outerState)
+    {
+        this(expression, token, name, body, args, varArgs, outerState, null);
+    }
+
+    public FunctionValue(Expression expression, Token token, String name, LazyValue body, List<String> args, String varArgs, Map<String, LazyValue> outerState, @Nullable FrameLayout frame)
     {
         this.expression = expression;
         this.token = token;
         this.name = name;
-        this.body = body;
         this.args = args;
         this.varArgs = varArgs;
         this.outerState = outerState;
+        this.body = new ScriptCompiler.FunctionBody(body);
+        this.frame = frame;
+        this.argSlots = resolveArgSlots(frame, args);
         variant = variantCounter++;
     }
 
+    private static int[] resolveArgSlots(@Nullable FrameLayout frame, List<String> args)
+    {
+        int[] slots = new int[args.size()];
+        for (int i = 0; i < slots.length; i++)
+        {
+            slots[i] = frame == null ? -1 : frame.slotOf(args.get(i));
+        }
+        return slots;
+    }
+
     @Override
     public String getString()
     {
@@ -98,7 +130,7 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
     @Override
     protected Value clone()
     {
-        FunctionValue ret = new FunctionValue(expression, token, name, body, args, varArgs);
+        FunctionValue ret = new FunctionValue(expression, token, name, body, args, varArgs, frame);
         ret.outerState = this.outerState;
         ret.variant = this.variant;
         return ret;
@@ -239,7 +271,7 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
                             ". Should be at least " + args.size() + ", not " + params.size() + " like " + argList
             );
         });
-        Context newFrame = c.recreate();
+        Context newFrame = frame == null ? c.recreate() : c.recreate(frame);
         if (freshNewCallingThread != null)
         {
             newFrame.setThreadContext(freshNewCallingThread);
@@ -253,7 +285,14 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         {
             String arg = args.get(i);
             Value val = params.get(i).reboundedTo(arg); // todo check if we need to copy that
-            newFrame.setVariable(arg, (cc, tt) -> val);
+            if (argSlots[i] >= 0)
+            {
+                newFrame.setLocalVariable(frame, argSlots[i], (cc, tt) -> val);
+            }
+            else
+            {
+                newFrame.setVariable(arg, (cc, tt) -> val);
+            }
         }
         if (varArgs != null)
         {
@@ -269,7 +308,7 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         Value retVal;
         try
         {
-            retVal = body.evalValue(newFrame, type); // todo not sure if we need to propagete type / consider boolean context in defined functions - answer seems ye
+            retVal = body.get(this, c).evalValue(newFrame, type); // todo not sure if we need to propagete type / consider boolean context in defined functions - answer seems ye
         }
         catch (BreakStatement | ContinueStatement exc)
         {
@@ -288,6 +327,20 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         return expression;
     }
 
+    /**
+     * @return true if the function body was compiled by the {@link ScriptCompiler}
+     */
+    public boolean isCompiled()
+    {
+        return body.isCompiled();
+    }
+
+    @Nullable
+    public FrameLayout getFrameLayout()
+    {
+        return frame;
+    }
+
     public Token getToken()
     {
         return token;
@@ -298,6 +351,76 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         return args;
     }
 
+    /**
+     * Tells if the function body may read the argument, by looking for the argument name in the function definition.
+     * Used to skip creating argument values nobody reads. Arguments past named ones are collected in varargs,
+     * so are always used.
+     */
+    public boolean usesArgument(int index)
+    {
+        if (index >= args.size())
+        {
+            return true;
+        }
+        boolean[] used = usedArguments;
+        if (used == null)
+        {
+            used = usedArguments = findUsedArguments();
+        }
+        return used[index];
+    }
+
+    private boolean[] findUsedArguments()
+    {
+        boolean[] used = new boolean[args.size()];
+        Expression.ExpressionNode definition = token.node;
+        Set<String> names = new HashSet<>();
+        if (definition == null || definition.args.size() != 2 || !FunctionAnalysis.collectVariableNames(definition.args.get(1), names))
+        {
+            Arrays.fill(used, true);
+            return used;
+        }
+        for (int i = 0; i < used.length; i++)
+        {
+            used[i] = names.contains(args.get(i));
+        }
+        return used;
+    }
+
+    /**
+     * @return true if the function body only uses its own variables and built-in functions without side effects,
+     * so it can be called from many threads at once. Unlike {@link #pure()}, calls can't be folded into constants.
+     */
+    public boolean hasPureBody()
+    {
+        Boolean pure = pureBody;
+        if (pure == null)
+        {
+            Expression.ExpressionNode definition = token.node;
+            pure = pureBody = definition != null && definition.args.size() == 2 && FunctionAnalysis.isPure(expression, definition.args.get(1));
+        }
+        return pure;
+    }
+
+    /**
+     * @return copy of the function with its own deep copies of captured outer variables, so calls on other threads
+     * don't share them
+     */
+    public FunctionValue withCopiedOuterState()
+    {
+        if (outerState == null)
+        {
+            return this;
+        }
+        FunctionValue copy = (FunctionValue) clone();
+        copy.outerState = new HashMap<>();
+        outerState.forEach((name, lv) -> {
+            Value value = lv.evalValue(null).deepcopy().reboundedTo(name);
+            copy.outerState.put(name, (c, t) -> value);
+        });
+        return copy;
+    }
+
     public String getVarArgs()
     {
         return varArgs;
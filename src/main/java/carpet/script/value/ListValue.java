@@ -126,10 +126,15 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
         items = new ArrayList<>();
     }
 
+    private ListValue(int capacity)
+    {
+        items = new ArrayList<>(capacity);
+    }
+
     @Override
     public Value add(Value other)
     {
-        ListValue output = new ListValue();
+        ListValue output = new ListValue(items.size());
         if (other instanceof ListValue list)
         {
             List<Value> otherItems = list.items;
@@ -164,7 +169,7 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
     @Override
     public Value subtract(Value other)
     {
-        ListValue output = new ListValue();
+        ListValue output = new ListValue(items.size());
         if (other instanceof ListValue list)
         {
             List<Value> otherItems = list.items;
@@ -199,7 +204,7 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
     @Override
     public Value multiply(Value other)
     {
-        ListValue output = new ListValue();
+        ListValue output = new ListValue(items.size());
         if (other instanceof ListValue list)
         {
             List<Value> otherItems = list.items;
@@ -228,7 +233,7 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
     @Override
     public Value divide(Value other)
     {
-        ListValue output = new ListValue();
+        ListValue output = new ListValue(items.size());
         if (other instanceof ListValue list)
         {
             List<Value> otherItems = list.items;
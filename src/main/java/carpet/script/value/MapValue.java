@@ -86,7 +86,7 @@ public class MapValue extends AbstractListValue implements ContainerValueInterfa
     @Override
     public Value deepcopy()
     {
-        Map<Value, Value> copyMap = new HashMap<>();
+        Map<Value, Value> copyMap = HashMap.newHashMap(map.size());
         map.forEach((key, value) -> copyMap.put(key.deepcopy(), value.deepcopy()));
         return new MapValue(copyMap);
     }
@@ -1,6 +1,7 @@
 package carpet.script.value;
 
 import carpet.script.CarpetContext;
+import carpet.script.ParseCache;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.ThrowStatement;
 import carpet.script.exception.Throwables;
@@ -106,6 +107,16 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
         nbtSupplier = tagSupplier;
     }
 
+    /**
+     * @return value reading the tag in place, that copies it before any modification
+     */
+    public static NBTSerializableValue view(Tag tag)
+    {
+        NBTSerializableValue value = new NBTSerializableValue();
+        value.nbtTag = tag;
+        return value;
+    }
+
     public static Value fromStack(ItemStack stack, RegistryAccess regs)
     {
         NBTSerializableValue value = new NBTSerializableValue();
@@ -165,9 +176,10 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
     @Override
     public Value deepcopy()
     {
+        // both values share the tag until one of them gets modified
         NBTSerializableValue copy = (NBTSerializableValue) clone();
         copy.owned = false;
-        ensureOwnership();
+        owned = false;
         return copy;
     }
 
@@ -337,7 +349,7 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
         }
     }
 
-    private static final Map<String, ItemInput> itemCache = new HashMap<>();
+    private static final ParseCache<ItemInput> itemCache = ParseCache.create("items", 64000);
 
     public static ItemStack parseItem(String itemString, RegistryAccess regs)
     {
@@ -349,27 +361,18 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
         if (customTag != null) {
             return ItemStack.CODEC.parse(regs.createSerializationContext(NbtOps.INSTANCE), customTag).getOrThrow(s -> new InternalExpressionException("Failed to parse item stack data: " + s));
         }
-        try
-        {
-            ItemInput res = itemCache.get(itemString);  // [SCARY SHIT] persistent caches over server reloads
-            if (res != null)
+        ItemInput res = itemCache.get(itemString, s -> {
+            try
             {
-                return res.createItemStack(1, false);
+                ItemParser.ItemResult parser = (new ItemParser(regs)).parse(new StringReader(s));
+                return new ItemInput(parser.item(), parser.components());
             }
-            ItemParser.ItemResult parser = (new ItemParser(regs)).parse(new StringReader(itemString));
-            res = new ItemInput(parser.item(), parser.components());
-
-            itemCache.put(itemString, res);
-            if (itemCache.size() > 64000)
+            catch (CommandSyntaxException e)
             {
-                itemCache.clear();
+                throw new ThrowStatement(s, Throwables.UNKNOWN_ITEM);
             }
-            return res.createItemStack(1, false);
-        }
-        catch (CommandSyntaxException e)
-        {
-            throw new ThrowStatement(itemString, Throwables.UNKNOWN_ITEM);
-        }
+        });
+        return res.createItemStack(1, false);
     }
 
     public static int validateSlot(int slot, Container inv)
@@ -402,7 +405,7 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
 
     private static Value decodeTag(Tag t)
     {
-        return t instanceof CompoundTag || t instanceof CollectionTag ? new NBTSerializableValue(() -> t) : decodeSimpleTag(t);
+        return t instanceof CompoundTag || t instanceof CollectionTag ? view(t) : decodeSimpleTag(t);
     }
 
     private static Value decodeTagDeep(Tag t)
@@ -732,29 +735,20 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
         }
     }
 
-    private static final Map<String, NbtPathArgument.NbtPath> pathCache = new HashMap<>();
+    private static final ParseCache<NbtPathArgument.NbtPath> pathCache = ParseCache.create("nbt paths", 1024);
 
     private static NbtPathArgument.NbtPath cachePath(String arg)
     {
-        NbtPathArgument.NbtPath res = pathCache.get(arg);
-        if (res != null)
-        {
-            return res;
-        }
-        try
-        {
-            res = NbtPathArgument.nbtPath().parse(new StringReader(arg));
-        }
-        catch (CommandSyntaxException exc)
-        {
-            throw new InternalExpressionException("Incorrect nbt path: " + arg);
-        }
-        if (pathCache.size() > 1024)
-        {
-            pathCache.clear();
-        }
-        pathCache.put(arg, res);
-        return res;
+        return pathCache.get(arg, s -> {
+            try
+            {
+                return NbtPathArgument.nbtPath().parse(new StringReader(s));
+            }
+            catch (CommandSyntaxException exc)
+            {
+                throw new InternalExpressionException("Incorrect nbt path: " + s);
+            }
+        });
     }
 
     @Override
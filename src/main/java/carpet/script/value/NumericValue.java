@@ -22,10 +22,40 @@ import static java.lang.Math.signum;
 public class NumericValue extends Value
 {
     private final double value;
-    private Long longValue;
+    private final long longValue;
+    private final boolean isLong;
     private static final double epsilon = abs(32 * ((7 * 0.1) * 10 - 7));
     private static final MathContext displayRounding = new MathContext(12, RoundingMode.HALF_EVEN);
 
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final NumericValue[] CACHE = new NumericValue[CACHE_HIGH - CACHE_LOW + 1];
+
+    static
+    {
+        for (int i = 0; i < CACHE.length; i++)
+        {
+            CACHE[i] = new NumericValue((long) (i + CACHE_LOW));
+        }
+    }
+
+    /**
+     * Returns an integer number value, shared for small integers so that counters and integer arithmetic don't allocate.
+     * Shared values can't be bound to variables, since binding writes into the instance, which other threads may be
+     * using, so bind {@link Value#bindable()} or {@link Value#reboundedTo} copies of them instead.
+     */
+    public static NumericValue shared(long value)
+    {
+        return value >= CACHE_LOW && value <= CACHE_HIGH ? CACHE[(int) value - CACHE_LOW] : new NumericValue(value);
+    }
+
+    @Override
+    public Value bindable()
+    {
+        boolean shared = isLong && longValue >= CACHE_LOW && longValue <= CACHE_HIGH && CACHE[(int) longValue - CACHE_LOW] == this;
+        return shared ? new NumericValue(longValue) : this;
+    }
+
     public static NumericValue asNumber(Value v1, String id)
     {
         if (v1 instanceof NumericValue nv)
@@ -65,7 +95,7 @@ public class NumericValue extends Value
     @Override
     public String getString()
     {
-        if (longValue != null)
+        if (isLong)
         {
             return Long.toString(getLong());
         }
@@ -95,7 +125,7 @@ public class NumericValue extends Value
     @Override
     public String getPrettyString()
     {
-        return longValue != null || getDouble() == getLong()
+        return isLong || getDouble() == getLong()
                 ? Long.toString(getLong())
                 : String.format(Locale.ROOT, "%.1f..", getDouble());
     }
@@ -124,7 +154,25 @@ public class NumericValue extends Value
 
     public long getLong()
     {
-        return longValue != null ? longValue : Long.valueOf(floor((value + epsilon)));
+        return isLong ? longValue : floor(value + epsilon);
+    }
+
+    /**
+     * Primitive arithmetic on two numbers, used by {@link #add} and friends, and directly by compiled code
+     */
+    public static NumericValue sum(NumericValue a, NumericValue b)
+    {
+        return a.isLong && b.isLong ? shared(a.longValue + b.longValue) : new NumericValue(a.value + b.value);
+    }
+
+    public static NumericValue difference(NumericValue a, NumericValue b)
+    {
+        return a.isLong && b.isLong ? shared(a.longValue - b.longValue) : new NumericValue(a.value - b.value);
+    }
+
+    public static NumericValue product(NumericValue a, NumericValue b)
+    {
+        return a.isLong && b.isLong ? shared(a.longValue * b.longValue) : new NumericValue(a.value * b.value);
     }
 
     @Override
@@ -132,7 +180,7 @@ public class NumericValue extends Value
     {  // TODO test if definintn add(NumericVlaue) woud solve the casting
         if (v instanceof NumericValue nv)
         {
-            return longValue != null && nv.longValue != null ? new NumericValue(longValue + nv.longValue) : new NumericValue(value + nv.value);
+            return sum(this, nv);
         }
         return super.add(v);
     }
@@ -142,7 +190,7 @@ public class NumericValue extends Value
     {  // TODO test if definintn add(NumericVlaue) woud solve the casting
         if (v instanceof NumericValue nv)
         {
-            return longValue != null && nv.longValue != null ? new NumericValue(longValue - nv.longValue) : new NumericValue(value - nv.value);
+            return difference(this, nv);
         }
         return super.subtract(v);
     }
@@ -152,7 +200,7 @@ public class NumericValue extends Value
     {
         if (v instanceof NumericValue nv)
         {
-            return longValue != null && nv.longValue != null ? new NumericValue(longValue * nv.longValue) : new NumericValue(value * nv.value);
+            return product(this, nv);
         }
         return v instanceof ListValue ? v.multiply(this) : new StringValue(StringUtils.repeat(v.getString(), (int) getLong()));
     }
@@ -166,7 +214,14 @@ public class NumericValue extends Value
     @Override
     public Value clone()
     {
-        return new NumericValue(value, longValue);
+        return new NumericValue(value, longValue, isLong);
+    }
+
+    @Override
+    public Value deepcopy()
+    {
+        // numbers are immutable, so copies of containers can share them
+        return this;
     }
 
     @Override
@@ -178,7 +233,7 @@ public class NumericValue extends Value
         }
         if (o instanceof NumericValue no)
         {
-            return longValue != null && no.longValue != null ? longValue.compareTo(no.longValue) : Double.compare(value, no.value);
+            return isLong && no.isLong ? Long.compare(longValue, no.longValue) : Double.compare(value, no.value);
         }
         return getString().compareTo(o.getString());
     }
@@ -194,15 +249,15 @@ public class NumericValue extends Value
             }
             if (o instanceof NumericValue no)
             {
-                if (longValue != null && no.longValue != null)
+                if (isLong && no.isLong)
                 {
-                    return longValue.equals(no.longValue);
+                    return longValue == no.longValue;
                 }
                 if (Double.isNaN(this.value) || Double.isNaN(no.value))
                 {
                     return false;
                 }
-                return !this.subtract(no).getBoolean();
+                return !(abs(value - no.value) > epsilon); // same as subtracting and checking the result, without the allocation
             }
             return super.equals(o);
         }
@@ -211,35 +266,40 @@ public class NumericValue extends Value
 
     public NumericValue(double value)
     {
-        this.value = value;
+        this(value, 0L, false);
     }
 
-    private NumericValue(double value, Long longValue)
+    private NumericValue(double value, long longValue, boolean isLong)
     {
         this.value = value;
         this.longValue = longValue;
+        this.isLong = isLong;
     }
 
     public NumericValue(String value)
     {
         BigDecimal decimal = new BigDecimal(value);
+        long exact = 0L;
+        boolean isExact = false;
         if (decimal.stripTrailingZeros().scale() <= 0)
         {
             try
             {
-                longValue = decimal.longValueExact();
+                exact = decimal.longValueExact();
+                isExact = true;
             }
             catch (ArithmeticException ignored)
             {
             }
         }
         this.value = decimal.doubleValue();
+        this.longValue = exact;
+        this.isLong = isExact;
     }
 
     public NumericValue(long value)
     {
-        this.longValue = value;
-        this.value = (double) value;
+        this(value, value, true);
     }
 
     @Override
@@ -270,7 +330,7 @@ public class NumericValue extends Value
     public int hashCode()
     {
         // is sufficiently close to the integer value
-        return longValue != null || Math.abs(Math.floor(value + 0.5D) - value) < epsilon ? Long.hashCode(getLong()) : Double.hashCode(value);
+        return isLong || Math.abs(Math.floor(value + 0.5D) - value) < epsilon ? Long.hashCode(getLong()) : Double.hashCode(value);
     }
 
 
@@ -282,11 +342,11 @@ public class NumericValue extends Value
     @Override
     public Tag toTag(boolean force, RegistryAccess regs)
     {
-        if (longValue != null)
+        if (isLong)
         {
             if (abs(longValue) < Integer.MAX_VALUE - 2)
             {
-                return IntTag.valueOf((int) (long) longValue);
+                return IntTag.valueOf((int) longValue);
             }
             return LongTag.valueOf(longValue);
         }
@@ -308,7 +368,7 @@ public class NumericValue extends Value
     @Override
     public JsonElement toJson()
     {
-        if (longValue != null)
+        if (isLong)
         {
             return new JsonPrimitive(longValue);
         }
@@ -317,19 +377,19 @@ public class NumericValue extends Value
 
     public NumericValue opposite()
     {
-        return longValue != null ? new NumericValue(-longValue) : new NumericValue(-value);
+        return isLong ? shared(-longValue) : new NumericValue(-value);
     }
 
     public boolean isInteger()
     {
-        return longValue != null || getDouble() == getLong();
+        return isLong || getDouble() == getLong();
     }
 
     public Value mod(NumericValue n2)
     {
-        if (this.longValue != null && n2.longValue != null)
+        if (isLong && n2.isLong)
         {
-            return new NumericValue(Math.floorMod(longValue, n2.longValue));
+            return shared(Math.floorMod(longValue, n2.longValue));
         }
         double x = value;
         double y = n2.value;
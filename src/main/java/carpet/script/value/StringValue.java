@@ -11,6 +11,7 @@ public class StringValue extends Value
     public static Value EMPTY = StringValue.of("");
 
     private final String str;
+    private int hash;
 
     @Override
     public String getString()
@@ -30,6 +31,12 @@ public class StringValue extends Value
         return new StringValue(str);
     }
 
+    @Override
+    public Value deepcopy()
+    {
+        return this;
+    }
+
     public StringValue(String str)
     {
         this.str = str;
@@ -46,6 +53,32 @@ public class StringValue extends Value
         return "string";
     }
 
+    @Override
+    public boolean equals(Object o)
+    {
+        if (str != null && o instanceof StringValue other && other.str != null)
+        {
+            return str.equals(other.str);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        if (str == null)
+        {
+            return super.hashCode();
+        }
+        int h = hash;
+        if (h == 0 && !str.isEmpty())
+        {
+            h = stringHash(str);
+            hash = h;
+        }
+        return h;
+    }
+
     @Override
     public Tag toTag(boolean force, RegistryAccess regs)
     {
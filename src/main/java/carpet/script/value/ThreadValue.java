@@ -2,6 +2,7 @@ package carpet.script.value;
 
 import carpet.script.Context;
 import carpet.script.Expression;
+import carpet.script.TaskPool;
 import carpet.script.Token;
 import carpet.script.exception.ExitStatement;
 import carpet.script.exception.ExpressionException;
@@ -13,7 +14,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
 
 import net.minecraft.core.RegistryAccess;
@@ -39,7 +39,7 @@ public class ThreadValue extends LazyListValue
 
     public CompletableFuture<Value> getCompletableFutureFromFunction(Value pool, FunctionValue function, Expression expr, Token token, Context ctx, List<Value> args)
     {
-        ExecutorService executor = ctx.host.getExecutor(pool);
+        TaskPool executor = ctx.host.getExecutor(pool);
         ThreadValue callingThread = isCoroutine ? this : null;
         if (executor == null)
         {
@@ -63,7 +63,7 @@ public class ThreadValue extends LazyListValue
                     ctx.host.handleExpressionException("Thread failed\n", exc);
                     return Value.NULL;
                 }
-            }, ctx.host.getExecutor(pool));
+            }, executor);
         }
     }
 
@@ -57,6 +57,15 @@ public abstract class Value implements Comparable<Value>, Cloneable
         return copy;
     }
 
+    /**
+     * @return this value, or a copy of it if the instance is shared by all scripts and threads, like cached small numbers,
+     * so the result can be bound to a variable and unbound without affecting anyone else
+     */
+    public Value bindable()
+    {
+        return this;
+    }
+
     public Value bindTo(String value)
     {
         this.boundVariable = value;
@@ -122,6 +131,10 @@ public abstract class Value implements Comparable<Value>, Cloneable
     @Override // for hashmap key access, and == operator
     public boolean equals(Object o)
     {
+        if (o == this)
+        {
+            return true;
+        }
         if (o instanceof Value v)
         {
             return this.compareTo(v) == 0;
@@ -238,8 +251,25 @@ public abstract class Value implements Comparable<Value>, Cloneable
     @Override
     public int hashCode()
     {
-        String stringVal = getString();
-        return stringVal.isEmpty() ? 0 : ("s" + stringVal).hashCode();
+        return stringHash(getString());
+    }
+
+    /**
+     * Hash of values compared by their string representation, same as {@code ("s" + string).hashCode()},
+     * but without building the prefixed string
+     */
+    protected static int stringHash(String string)
+    {
+        if (string.isEmpty())
+        {
+            return 0;
+        }
+        int hash = 's';
+        for (int i = 0; i < string.length(); i++)
+        {
+            hash = 31 * hash + string.charAt(i);
+        }
+        return hash;
     }
 
     public Value deepcopy()